@@ -0,0 +1,42 @@
+package lottery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * What the benchmarks share: a fixed draw secret, so runs draw the same
+ * numbers, and scratch data directories.
+ */
+final class BenchSupport {
+    static final byte[] SECRET = new byte[32];
+
+    private BenchSupport() {
+    }
+
+    /**
+     * The server logs every registration and notification; keeps that out of the measurements.
+     */
+    static void silenceConsole() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    static Path createDataDir() throws IOException {
+        return Files.createTempDirectory("lottery-bench");
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
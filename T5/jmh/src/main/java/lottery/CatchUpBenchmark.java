@@ -0,0 +1,69 @@
+package lottery;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catch-up draw of many due slots, sequential against parallel, as after the
+ * server was down. Every fourth slot has too few tickets to be won, so pots
+ * roll over. That both paths record the same results is checked by
+ * LotteryServerTest.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatchUpBenchmark {
+    @Param({"24", "168"})
+    public int slots;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Path dataDir;
+    private LotteryServer server;
+
+    @Setup(Level.Trial)
+    public void silence() {
+        BenchSupport.silenceConsole();
+    }
+
+    @Setup(Level.Invocation)
+    public void fillSlots() throws IOException {
+        dataDir = BenchSupport.createDataDir();
+        server = new LotteryServer(dataDir, new DrawRandom(BenchSupport.SECRET));
+        LocalDateTime last = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        List<UserRegistration> chunk = new ArrayList<>(65_536);
+        for (int slot = 0; slot < slots; slot++) {
+            int tickets = slot % 4 == 0 ? 3 : 10_000;
+            for (int i = 0; i < tickets; i++) {
+                chunk.add(new UserRegistration("user" + (i / 256) + "@example.com", last.minusHours(slot), i % 256));
+                if (chunk.size() == 65_536) {
+                    server.applyReg(chunk);
+                    chunk = new ArrayList<>(65_536);
+                }
+            }
+        }
+        server.applyReg(chunk);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeServer() throws IOException {
+        server.close();
+        BenchSupport.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public void catchUp() {
+        server.makeDraw(parallel);
+    }
+}
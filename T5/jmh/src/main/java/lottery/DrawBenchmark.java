@@ -0,0 +1,65 @@
+package lottery;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the draw of one due slot of the given size. Every invocation
+ * draws a new hour, filled before the timing starts, as a drawn hour takes
+ * no tickets again.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DrawBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int slotSize;
+
+    private Path dataDir;
+    private LotteryServer server;
+    private LocalDateTime slot;
+
+    @Setup(Level.Trial)
+    public void openServer() throws IOException {
+        BenchSupport.silenceConsole();
+        dataDir = BenchSupport.createDataDir();
+        server = new LotteryServer(dataDir, new DrawRandom(BenchSupport.SECRET));
+        // Enough past hours for every invocation, drawn in order.
+        slot = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(100);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeServer() throws IOException {
+        server.close();
+        BenchSupport.deleteRecursively(dataDir);
+    }
+
+    @Setup(Level.Invocation)
+    public void fillSlot() {
+        slot = slot.plusHours(1);
+        List<UserRegistration> chunk = new ArrayList<>(65_536);
+        for (int i = 0; i < slotSize; i++) {
+            chunk.add(new UserRegistration("user" + (i / 256) + "@example.com", slot, i % 256));
+            if (chunk.size() == 65_536) {
+                server.applyReg(chunk);
+                chunk = new ArrayList<>(65_536);
+            }
+        }
+        server.applyReg(chunk);
+    }
+
+    @Benchmark
+    public void draw() {
+        server.makeDraw();
+    }
+}
@@ -0,0 +1,32 @@
+package lottery;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Derivation of the winning numbers of consecutive slots. Run with
+ * {@code -t} to derive from several threads at once; they share no state.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DrawRandomBenchmark {
+    private final DrawRandom drawRandom = new DrawRandom(BenchSupport.SECRET);
+
+    /**
+     * The next slot of one thread.
+     */
+    @State(Scope.Thread)
+    public static class Slot {
+        int hour;
+    }
+
+    @Benchmark
+    public int number(Slot slot) {
+        return drawRandom.number(EpochHours.toDateTime(slot.hour++));
+    }
+}
@@ -0,0 +1,70 @@
+package lottery;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of registration and result lists through Java serialization and
+ * through the wire codec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncodingBenchmark {
+    @Param({"4", "168", "1000"})
+    public int size;
+
+    private ArrayList<UserRegistration> registrations;
+    private ArrayList<LotteryResult> results;
+
+    @Setup(Level.Trial)
+    public void createLists() {
+        LocalDateTime slot = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).plusDays(1);
+        registrations = new ArrayList<>(size);
+        results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            registrations.add(new UserRegistration("user" + (i % 50) + "@example.com", slot.plusHours(i % 24), i % 256));
+            results.add(new LotteryResult(slot.plusHours(i), i % 256, 400, 1, 4_000_000, 0, 0,
+                    new byte[DrawRandom.COMMITMENT_BYTES]));
+        }
+    }
+
+    @Benchmark
+    public List<UserRegistration> registrationsWire() throws IOException {
+        return WireCodec.decodeRegistrations(WireCodec.encodeRegistrations(registrations));
+    }
+
+    @Benchmark
+    public Object registrationsSerialization() throws IOException, ClassNotFoundException {
+        return roundTrip(registrations);
+    }
+
+    @Benchmark
+    public List<LotteryResult> resultsWire() throws IOException {
+        return WireCodec.decodeResults(WireCodec.encodeResults(results));
+    }
+
+    @Benchmark
+    public Object resultsSerialization() throws IOException, ClassNotFoundException {
+        return roundTrip(results);
+    }
+
+    private static Object roundTrip(Serializable value) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package lottery;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * History queries over a ledger holding years of hourly draws, encoded for
+ * the wire, with and without the cache of encoded replies.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+    @Param({"5"})
+    public int years;
+
+    @Param({"day", "week", "year", "all"})
+    public String range;
+
+    private Path dataDir;
+    private LotteryServer server;
+    private LocalDateTime from;
+    private LocalDateTime last;
+
+    @Setup(Level.Trial)
+    public void fillLedger() throws IOException {
+        BenchSupport.silenceConsole();
+        dataDir = BenchSupport.createDataDir();
+        last = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(1);
+        int draws = years * 365 * 24;
+        try (ResultLedger ledger = new ResultLedger(dataDir.resolve("results.ledger"))) {
+            Random random = new Random(42);
+            for (int i = draws - 1; i >= 0; i--) {
+                LocalDateTime slot = last.minusHours(i);
+                int number = random.nextInt(256);
+                ArrayList<UserRegistration> winners = new ArrayList<>();
+                for (int w = random.nextInt(3); w > 0; w--) {
+                    winners.add(new UserRegistration("winner" + w + "@example.com", slot, number));
+                }
+                ledger.append(new LotteryResult(slot, number, 100, winners.size(),
+                        winners.isEmpty() ? 0 : 1_000_000 / winners.size(), 0, winners.isEmpty() ? 1_000_000 : 0,
+                        new byte[DrawRandom.COMMITMENT_BYTES]), winners);
+            }
+        }
+        server = new LotteryServer(dataDir, new DrawRandom(BenchSupport.SECRET));
+        from = switch (range) {
+            case "day" -> last.minusDays(1);
+            case "week" -> last.minusWeeks(1);
+            case "year" -> last.minusYears(1);
+            default -> last.minusHours(draws);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void closeServer() throws IOException {
+        server.close();
+        BenchSupport.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public ByteBuffer uncached() {
+        return WireCodec.encodeResults(server.getHisRec(from, last));
+    }
+
+    @Benchmark
+    public ByteBuffer cached() {
+        return server.encodedHistory(from, last);
+    }
+}
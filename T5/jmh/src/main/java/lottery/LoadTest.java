@@ -0,0 +1,286 @@
+package lottery;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End-to-end load test of a local lottery server on an accelerated clock.
+ * Thousands of simulated clients register tickets over the socket protocol,
+ * one connection per request like the interactive client, while the server
+ * goes through its hourly draws. The report gives the registration
+ * throughput, the latency percentiles seen by the clients, how long the draws
+ * took to complete after their hour and the heap usage, as one JSON document.
+ * The clients, the clock and the draw secret are seeded, so runs with the same
+ * options send the same requests.
+ *
+ * <p>Options: {@code --clients 2000}, {@code --speed 3600} (clock seconds per
+ * real second), {@code --hours 24}, {@code --tickets 4} (per request),
+ * {@code --think-ms 50}, {@code --start 2030-01-01T00:00}, {@code --seed 42},
+ * {@code --out load-report.json}.
+ */
+public class LoadTest {
+    private static final PrintStream CONSOLE = System.out;
+    // How often the draws and the heap are sampled, in milliseconds.
+    private static final long SAMPLE_MILLIS = 2;
+
+    private final int clients;
+    private final double speed;
+    private final int hours;
+    private final int ticketsPerRequest;
+    private final long thinkMillis;
+    private final LocalDateTime start;
+    private final long seed;
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder registered = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Map<String, LongAdder> rejections = new ConcurrentHashMap<>();
+    private final List<long[]> latencies = Collections.synchronizedList(new ArrayList<>());
+
+    private LoadTest(Map<String, String> options) {
+        this.clients = Integer.parseInt(options.getOrDefault("clients", "2000"));
+        this.speed = Double.parseDouble(options.getOrDefault("speed", "3600"));
+        this.hours = Integer.parseInt(options.getOrDefault("hours", "24"));
+        this.ticketsPerRequest = Integer.parseInt(options.getOrDefault("tickets", "4"));
+        this.thinkMillis = Long.parseLong(options.getOrDefault("think-ms", "50"));
+        this.start = LocalDateTime.parse(options.getOrDefault("start", "2030-01-01T00:00"));
+        this.seed = Long.parseLong(options.getOrDefault("seed", "42"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        Path out = Paths.get(options.getOrDefault("out", "load-report.json"));
+
+        // All clients come from one address and the load is the point: lift the limits unless set.
+        System.setProperty("lottery.emailRate", System.getProperty("lottery.emailRate", "0"));
+        System.setProperty("lottery.addressRate", System.getProperty("lottery.addressRate", "0"));
+        System.setProperty("lottery.maxTicketsPerSlot", System.getProperty("lottery.maxTicketsPerSlot", "0"));
+        System.setProperty("lottery.httpPort", System.getProperty("lottery.httpPort", "0"));
+
+        String report = new LoadTest(options).run();
+        Files.writeString(out, report);
+        CONSOLE.print(report);
+        CONSOLE.println("Load test report written to " + out.toAbsolutePath());
+    }
+
+    private String run() throws Exception {
+        Path dir = Files.createTempDirectory("lottery-load");
+        AcceleratedClock clock = new AcceleratedClock(start, speed);
+        LocalDateTime end = start.plusHours(hours);
+        List<Double> drawMillis = new ArrayList<>();
+        List<Double> completionMillis = new ArrayList<>();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long peakHeap = 0;
+        long heapAfterGc;
+        long elapsed;
+        // The server logs every registration and notification; keep that out of the measurements.
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try (LotteryServer server = new LotteryServer(dir, new DrawRandom(new byte[32]), null, clock)) {
+            Thread serverThread = new Thread(server::start, "lottery-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            awaitServer();
+
+            ExecutorService executor;
+            try {
+                executor = VirtualThreadEngine.newVirtualThreadExecutor();
+            } catch (UnsupportedOperationException e) {
+                executor = Executors.newFixedThreadPool(clients);
+            }
+            long startNanos = System.nanoTime();
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                executor.execute(() -> simulateClient(client, clock));
+            }
+
+            // Follow the draws: the run time of every draw, and for every drawn slot
+            // the real time from its hour until its result could be read.
+            long draws = server.metrics().getDrawCount();
+            LocalDateTime nextSlot = start.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            while (clock.now().isBefore(end)) {
+                Thread.sleep(SAMPLE_MILLIS);
+                peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+                if (server.metrics().getDrawCount() != draws) {
+                    draws = server.metrics().getDrawCount();
+                    drawMillis.add(server.metrics().getLastDrawMillis());
+                }
+                LocalDateTime now = clock.now();
+                while (!nextSlot.isAfter(now)) {
+                    if (!server.getHisRec(nextSlot, nextSlot).isEmpty()) {
+                        completionMillis.add((System.nanoTime() - clock.nanoTimeAt(nextSlot)) / 1e6);
+                    } else if (now.isBefore(nextSlot.plusHours(1))) {
+                        break;
+                    }
+                    // Drawn, or passed by the next draw without a result because it had no tickets.
+                    nextSlot = nextSlot.plusHours(1);
+                }
+            }
+            running.set(false);
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            elapsed = System.nanoTime() - startNanos;
+            // What the server keeps: the tickets of the coming day and the summaries of the draws.
+            System.gc();
+            heapAfterGc = memory.getHeapMemoryUsage().getUsed();
+        } finally {
+            System.setOut(CONSOLE);
+            deleteRecursively(dir);
+        }
+        return report(elapsed, drawMillis, completionMillis, peakHeap, heapAfterGc, memory.getHeapMemoryUsage().getMax());
+    }
+
+    // A client registers a few tickets for the coming day, waits, and does it again. Slots start
+    // an hour ahead, so a ticket is not in the past by the time a slow request reaches the server.
+    private void simulateClient(int client, LotteryClock clock) {
+        Random random = new Random(seed + client);
+        String email = "client" + client + "@example.com";
+        long[] samples = new long[1024];
+        int count = 0;
+        while (running.get()) {
+            LocalDateTime firstSlot = clock.now().truncatedTo(ChronoUnit.HOURS).plusHours(2);
+            ArrayList<UserRegistration> registrations = new ArrayList<>(ticketsPerRequest);
+            for (int i = 0; i < ticketsPerRequest; i++) {
+                registrations.add(new UserRegistration(email, firstSlot.plusHours(random.nextInt(24)), random.nextInt(256)));
+            }
+            long requestStart = System.nanoTime();
+            try {
+                WireCodec.Frame reply = exchange(WireCodec.REGISTER, registrations);
+                long latency = System.nanoTime() - requestStart;
+                if (count == samples.length) {
+                    samples = Arrays.copyOf(samples, count * 2);
+                }
+                samples[count++] = latency;
+                requests.increment();
+                if (reply.type() == WireCodec.OK) {
+                    registered.add(ticketsPerRequest);
+                } else {
+                    rejections.computeIfAbsent(WireCodec.decodeText(reply.payload()), k -> new LongAdder()).increment();
+                }
+            } catch (IOException e) {
+                failures.increment();
+            }
+            if (thinkMillis > 0) {
+                try {
+                    Thread.sleep(thinkMillis);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        latencies.add(Arrays.copyOf(samples, count));
+    }
+
+    private static WireCodec.Frame exchange(byte type, ArrayList<UserRegistration> registrations) throws IOException {
+        try (Socket socket = new Socket("localhost", LotteryServer.PORT);
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            WireCodec.writeFrame(out, type, WireCodec.encodeRegistrations(registrations));
+            out.flush();
+            return WireCodec.readFrame(in);
+        }
+    }
+
+    private static void awaitServer() throws InterruptedException {
+        for (int attempt = 0; attempt < 500; attempt++) {
+            try {
+                new Socket("localhost", LotteryServer.PORT).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(10);
+            }
+        }
+        throw new IllegalStateException("The server did not start listening on port " + LotteryServer.PORT);
+    }
+
+    private String report(long elapsedNanos, List<Double> drawMillis, List<Double> completionMillis,
+                          long peakHeap, long heapAfterGc, long maxHeap) {
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"config\": {\"clients\": ").append(clients)
+                .append(", \"speed\": ").append(format(speed))
+                .append(", \"hours\": ").append(hours)
+                .append(", \"ticketsPerRequest\": ").append(ticketsPerRequest)
+                .append(", \"thinkMillis\": ").append(thinkMillis)
+                .append(", \"start\": \"").append(start)
+                .append("\", \"seed\": ").append(seed)
+                .append(", \"engine\": \"").append(System.getProperty("lottery.engine", "pool"))
+                .append("\", \"java\": \"").append(Runtime.version())
+                .append("\", \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append("},\n");
+        json.append("  \"seconds\": ").append(format(seconds)).append(",\n");
+        json.append("  \"requests\": ").append(requests.sum())
+                .append(", \"requestsPerSecond\": ").append(format(requests.sum() / seconds)).append(",\n");
+        json.append("  \"registrations\": ").append(registered.sum())
+                .append(", \"registrationsPerSecond\": ").append(format(registered.sum() / seconds)).append(",\n");
+        json.append("  \"failedRequests\": ").append(failures.sum()).append(",\n");
+        json.append("  \"rejections\": {");
+        String separator = "";
+        for (Map.Entry<String, LongAdder> rejection : new TreeMap<>(rejections).entrySet()) {
+            json.append(separator).append(Json.quote(rejection.getKey())).append(": ").append(rejection.getValue().sum());
+            separator = ", ";
+        }
+        json.append("},\n");
+        json.append("  \"latencyMillis\": {\"p50\": ").append(format(percentile(all, 0.50) / 1e6))
+                .append(", \"p99\": ").append(format(percentile(all, 0.99) / 1e6))
+                .append(", \"p999\": ").append(format(percentile(all, 0.999) / 1e6))
+                .append(", \"max\": ").append(format(all.length == 0 ? 0 : all[all.length - 1] / 1e6)).append("},\n");
+        json.append("  \"draws\": {\"runs\": ").append(drawMillis.size())
+                .append(", \"runMillisP50\": ").append(format(percentile(drawMillis, 0.50)))
+                .append(", \"runMillisMax\": ").append(format(percentile(drawMillis, 1)))
+                .append(", \"drawnSlots\": ").append(completionMillis.size())
+                .append(", \"completionMillisP50\": ").append(format(percentile(completionMillis, 0.50)))
+                .append(", \"completionMillisMax\": ").append(format(percentile(completionMillis, 1)))
+                .append(", \"sampleMillis\": ").append(SAMPLE_MILLIS).append("},\n");
+        json.append("  \"heapMegabytes\": {\"peak\": ").append(format(peakHeap / 1048576.0))
+                .append(", \"afterGc\": ").append(format(heapAfterGc / 1048576.0))
+                .append(", \"max\": ").append(format(maxHeap / 1048576.0)).append("}\n");
+        return json.append("}\n").toString();
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.max(0, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    private static double percentile(List<Double> values, double fraction) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        List<Double> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(Math.max(0, (int) Math.ceil(fraction * sorted.size()) - 1));
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
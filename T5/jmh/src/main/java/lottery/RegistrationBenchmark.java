@@ -0,0 +1,74 @@
+package lottery;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registration throughput: checkReg followed by processReg, durable in the
+ * write-ahead log. Run with {@code -t} to register from several threads; each
+ * thread registers for its own email.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// Measure the server itself, not the per-email and per-address limits in front of it.
+@Fork(value = 1, jvmArgsAppend = {"-Dlottery.emailRate=0", "-Dlottery.addressRate=0", "-Dlottery.maxTicketsPerSlot=0"})
+@State(Scope.Benchmark)
+public class RegistrationBenchmark {
+    @Param({"1", "4", "64"})
+    public int batchSize;
+
+    private final AtomicInteger threads = new AtomicInteger();
+    private Path dataDir;
+    private LotteryServer server;
+    private LocalDateTime firstSlot;
+
+    @Setup(Level.Trial)
+    public void openServer() throws IOException {
+        BenchSupport.silenceConsole();
+        dataDir = BenchSupport.createDataDir();
+        server = new LotteryServer(dataDir, new DrawRandom(BenchSupport.SECRET));
+        firstSlot = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).plusDays(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeServer() throws IOException {
+        server.close();
+        BenchSupport.deleteRecursively(dataDir);
+    }
+
+    /**
+     * The tickets of one thread: its own email on every number of consecutive slots.
+     */
+    @State(Scope.Thread)
+    public static class Tickets {
+        String email;
+        int sequence;
+
+        @Setup(Level.Trial)
+        public void pickEmail(RegistrationBenchmark benchmark) {
+            email = "bench" + benchmark.threads.getAndIncrement() + "@example.com";
+        }
+    }
+
+    @Benchmark
+    public byte[] register(Tickets tickets) throws IOException {
+        List<UserRegistration> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++, tickets.sequence++) {
+            batch.add(new UserRegistration(tickets.email, firstSlot.plusHours(tickets.sequence / 256), tickets.sequence % 256));
+        }
+        if (!server.checkReg(batch).equals("OK")) {
+            throw new IllegalStateException("Benchmark registrations were rejected");
+        }
+        return server.processReg(batch);
+    }
+}
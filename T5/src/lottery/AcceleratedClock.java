@@ -0,0 +1,54 @@
+package lottery;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A clock that starts at a given time and runs a fixed number of times faster
+ * than real time. It is driven by the monotonic clock of the JVM, so it never
+ * jumps, and two runs from the same start time see the same slots.
+ */
+public class AcceleratedClock implements LotteryClock {
+    private final LocalDateTime start;
+    private final double speed;
+    private final long originNanos;
+
+    /**
+     * Starts the clock.
+     *
+     * @param start The time the clock shows now.
+     * @param speed How many times faster than real time the clock runs, 3600 for an hour a second.
+     */
+    public AcceleratedClock(LocalDateTime start, double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("The clock speed must be positive: " + speed);
+        }
+        this.start = start;
+        this.speed = speed;
+        this.originNanos = System.nanoTime();
+    }
+
+    @Override
+    public LocalDateTime now() {
+        return start.plusNanos((long) ((System.nanoTime() - originNanos) * speed));
+    }
+
+    @Override
+    public long toRealMillis(long clockMillis) {
+        return (long) Math.ceil(clockMillis / speed);
+    }
+
+    /**
+     * Gets the value of System.nanoTime at which this clock shows a given time.
+     *
+     * @param time The time on this clock.
+     * @return The real nano time.
+     */
+    public long nanoTimeAt(LocalDateTime time) {
+        return originNanos + (long) (ChronoUnit.NANOS.between(start, time) / speed);
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+}
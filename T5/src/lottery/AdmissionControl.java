@@ -0,0 +1,169 @@
+package lottery;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the work a single client can cause before its tickets are checked.
+ * Requests are limited by size, by rate per remote address and by rate of
+ * tickets per email, and a slot takes a maximum number of tickets. The rate
+ * limits are token buckets kept as one atomic per key, so admitting a request
+ * costs a map lookup and a compare-and-set, without locks.
+ */
+public class AdmissionControl {
+    private final int maxBatch;
+    private final int maxTicketsPerSlot;
+    private final RateLimiter<InetAddress> byAddress;
+    private final RateLimiter<String> byEmail;
+
+    /**
+     * Creates the admission limits. A limit of 0 disables it.
+     *
+     * @param maxBatch          The maximum number of tickets in one request.
+     * @param maxTicketsPerSlot The maximum number of tickets in one drawing slot.
+     * @param addressRate       The requests per second allowed from one remote address.
+     * @param addressBurst      The requests one remote address may send at once.
+     * @param emailRate         The tickets per second allowed for one email.
+     * @param emailBurst        The tickets one email may register at once.
+     */
+    public AdmissionControl(int maxBatch, int maxTicketsPerSlot, double addressRate, int addressBurst,
+                            double emailRate, int emailBurst) {
+        this.maxBatch = maxBatch;
+        this.maxTicketsPerSlot = maxTicketsPerSlot;
+        this.byAddress = addressRate > 0 ? new RateLimiter<>(addressRate, addressBurst) : null;
+        this.byEmail = emailRate > 0 ? new RateLimiter<>(emailRate, emailBurst) : null;
+    }
+
+    /**
+     * Reads the limits from the lottery.maxBatch, lottery.maxTicketsPerSlot,
+     * lottery.addressRate, lottery.addressBurst, lottery.emailRate and
+     * lottery.emailBurst properties.
+     *
+     * @return The admission limits.
+     */
+    public static AdmissionControl fromProperties() {
+        return new AdmissionControl(
+                Integer.getInteger("lottery.maxBatch", 10_000),
+                Integer.getInteger("lottery.maxTicketsPerSlot", 1_000_000),
+                Double.parseDouble(System.getProperty("lottery.addressRate", "1000")),
+                Integer.getInteger("lottery.addressBurst", 2_000),
+                Double.parseDouble(System.getProperty("lottery.emailRate", "100")),
+                Integer.getInteger("lottery.emailBurst", 1_000));
+    }
+
+    /**
+     * Takes a request token of a remote address.
+     *
+     * @param address The address the request came from.
+     * @return false if the address sends too many requests.
+     */
+    public boolean admitRequest(InetAddress address) {
+        return byAddress == null || address == null || byAddress.acquire(address, 1);
+    }
+
+    /**
+     * Checks the number of tickets in one request.
+     *
+     * @param tickets The number of tickets.
+     * @return false if the request is too large to be served.
+     */
+    public boolean admitBatch(int tickets) {
+        return maxBatch <= 0 || tickets <= maxBatch;
+    }
+
+    /**
+     * Takes ticket tokens of an email.
+     *
+     * @param email   The email the tickets are registered for.
+     * @param tickets The number of tickets.
+     * @return false if the email registers too many tickets.
+     */
+    public boolean admitTickets(String email, int tickets) {
+        return byEmail == null || byEmail.acquire(email, tickets);
+    }
+
+    /**
+     * Gives back ticket tokens taken for a request that was rejected after all.
+     *
+     * @param email   The email the tokens were taken for.
+     * @param tickets The number of tickets.
+     */
+    public void refundTickets(String email, int tickets) {
+        if (byEmail != null) {
+            byEmail.release(email, tickets);
+        }
+    }
+
+    /**
+     * Checks whether a slot can take another ticket.
+     *
+     * @param slotSize The number of tickets already in the slot.
+     * @return false if the slot is full.
+     */
+    public boolean admitSlot(int slotSize) {
+        return maxTicketsPerSlot <= 0 || slotSize < maxTicketsPerSlot;
+    }
+
+    /**
+     * Token buckets by key, as in the generic cell rate algorithm: a bucket is
+     * the time at which it will be full again, and taking tokens moves that
+     * time forward. A key whose bucket is full is the same as an unknown one,
+     * so such keys are dropped when the map grows.
+     */
+    private static final class RateLimiter<K> {
+        private static final int SWEEP_SIZE = 1 << 16;
+        private static final long SWEEP_INTERVAL_NANOS = 1_000_000_000L;
+
+        private final Map<K, AtomicLong> fullAt = new ConcurrentHashMap<>();
+        private final long nanosPerToken;
+        private final long burstNanos;
+        private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+        RateLimiter(double perSecond, int burst) {
+            this.nanosPerToken = Math.max(1, (long) (1e9 / perSecond));
+            this.burstNanos = nanosPerToken * Math.max(1, burst);
+        }
+
+        boolean acquire(K key, int tokens) {
+            long now = System.nanoTime();
+            AtomicLong bucket = fullAt.get(key);
+            if (bucket == null) {
+                sweep(now);
+                bucket = fullAt.computeIfAbsent(key, k -> new AtomicLong(now));
+            }
+            while (true) {
+                long current = bucket.get();
+                long next = Math.max(current, now) + tokens * nanosPerToken;
+                if (next - now > burstNanos) {
+                    return false;
+                }
+                if (bucket.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        void release(K key, int tokens) {
+            AtomicLong bucket = fullAt.get(key);
+            if (bucket != null) {
+                // A bucket moved into the past is simply full.
+                bucket.addAndGet(-tokens * nanosPerToken);
+            }
+        }
+
+        private void sweep(long now) {
+            long due = nextSweep.get();
+            if (fullAt.size() < SWEEP_SIZE || now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+                return;
+            }
+            for (Iterator<AtomicLong> it = fullAt.values().iterator(); it.hasNext(); ) {
+                if (it.next().get() - now <= 0) {
+                    it.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package lottery;
+
+import java.io.*;
+import java.net.Socket;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A non-interactive client for resellers that register tickets in bulk. Large
+ * registrations are split into batches that are sent on one connection
+ * without waiting for the previous reply, and every ticket gets its own accept
+ * or reject status. Run as a program, it generates load and reports the
+ * throughput.
+ */
+public class BulkClient implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 2000;
+    public static final int DEFAULT_WINDOW = 8;
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final DataInputStream in;
+    private final int batchSize;
+    private final int windowSize;
+    private final Semaphore window;
+    private final Queue<Batch> inFlight = new ConcurrentLinkedQueue<>();
+    private final Thread reader;
+    private int nextBatchId;
+    private volatile IOException failure;
+    private volatile boolean closing;
+
+    /**
+     * Connects to a lottery server.
+     *
+     * @param host       The server host.
+     * @param port       The server port.
+     * @param batchSize  The maximum number of tickets per batch.
+     * @param windowSize The maximum number of batches waiting for their reply.
+     * @throws IOException If the connection cannot be made.
+     */
+    public BulkClient(String host, int port, int batchSize, int windowSize) throws IOException {
+        this.socket = new Socket(host, port);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.batchSize = batchSize;
+        this.windowSize = windowSize;
+        this.window = new Semaphore(windowSize);
+        this.reader = new Thread(this::readLoop, "bulk-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends one batch without waiting for its reply. Blocks while the window
+     * of outstanding batches is full.
+     *
+     * @param registrations The tickets of the batch.
+     * @return The outcome of every ticket, in order, once the server replies.
+     * @throws IOException If the batch cannot be sent.
+     */
+    public CompletableFuture<byte[]> submit(List<UserRegistration> registrations) throws IOException {
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the window");
+        }
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        synchronized (this) {
+            if (failure != null) {
+                window.release();
+                throw failure;
+            }
+            int batchId = nextBatchId++;
+            // Queued before it is written, so the reader always finds the batch of a reply.
+            Batch batch = new Batch(batchId, registrations.size(), result);
+            inFlight.add(batch);
+            // A reader that failed after the check above has already failed everything it will see.
+            if (failure != null && inFlight.remove(batch)) {
+                window.release();
+                throw failure;
+            }
+            WireCodec.writeFrame(out, WireCodec.BULK_REGISTER, WireCodec.encodeBulkRegistrations(batchId, registrations));
+            out.flush();
+        }
+        return result;
+    }
+
+    /**
+     * Registers any number of tickets, pipelining the batches.
+     *
+     * @param registrations The tickets.
+     * @return The outcome of every ticket, in order: WireCodec.ACCEPTED or one of the REJECTED codes.
+     * @throws IOException If the tickets cannot be sent or the server fails a batch.
+     */
+    public byte[] register(List<UserRegistration> registrations) throws IOException {
+        List<CompletableFuture<byte[]>> results = new ArrayList<>();
+        for (int from = 0; from < registrations.size(); from += batchSize) {
+            results.add(submit(registrations.subList(from, Math.min(from + batchSize, registrations.size()))));
+        }
+        byte[] statuses = new byte[registrations.size()];
+        int position = 0;
+        for (CompletableFuture<byte[]> result : results) {
+            byte[] batchStatuses;
+            try {
+                batchStatuses = result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the server");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            }
+            System.arraycopy(batchStatuses, 0, statuses, position, batchStatuses.length);
+            position += batchStatuses.length;
+        }
+        return statuses;
+    }
+
+    /**
+     * Waits for the outstanding replies and closes the connection.
+     *
+     * @throws IOException If the connection cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        window.acquireUninterruptibly(windowSize);
+        closing = true;
+        socket.close();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readLoop() {
+        // The batch whose reply is being read; it has already left inFlight.
+        Batch batch = null;
+        try {
+            while (true) {
+                WireCodec.Frame reply = WireCodec.readFrame(in);
+                batch = inFlight.poll();
+                if (batch == null) {
+                    throw new IOException("Reply without a request");
+                }
+                if (reply.type() == WireCodec.BULK_RESULT) {
+                    WireCodec.BulkResult result = WireCodec.decodeBulkResult(reply.payload());
+                    if (result.batchId() != batch.id || result.statuses().length != batch.size) {
+                        throw new IOException("Reply does not match batch " + batch.id);
+                    }
+                    batch.result.complete(result.statuses());
+                } else {
+                    batch.result.completeExceptionally(new IOException(WireCodec.decodeText(reply.payload())));
+                }
+                window.release();
+                batch = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = closing ? new IOException("Client closed")
+                    : e instanceof IOException io ? io : new IOException("Invalid reply", e);
+            // Nothing more will be read: fail whatever is still waiting.
+            if (batch != null) {
+                batch.result.completeExceptionally(failure);
+                window.release();
+            }
+            while ((batch = inFlight.poll()) != null) {
+                batch.result.completeExceptionally(failure);
+                window.release();
+            }
+        }
+    }
+
+    private record Batch(int id, int size, CompletableFuture<byte[]> result) {
+    }
+
+    /**
+     * Generates random bulk registrations for the coming day and reports the
+     * end-to-end throughput. Options: --host, --port, --tickets, --batch,
+     * --window, --connections and --emails.
+     *
+     * @param args The options, as pairs of name and value.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        String host = options.getOrDefault("host", "localhost");
+        int port = Integer.parseInt(options.getOrDefault("port", String.valueOf(LotteryServer.PORT)));
+        int tickets = Integer.parseInt(options.getOrDefault("tickets", "100000"));
+        int batchSize = Integer.parseInt(options.getOrDefault("batch", String.valueOf(DEFAULT_BATCH_SIZE)));
+        int windowSize = Integer.parseInt(options.getOrDefault("window", String.valueOf(DEFAULT_WINDOW)));
+        int connections = Integer.parseInt(options.getOrDefault("connections", "1"));
+        int emails = Integer.parseInt(options.getOrDefault("emails", "10000"));
+
+        LocalDateTime firstSlot = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).plusHours(1);
+        LongAdder[] counts = new LongAdder[WireCodec.REJECTED_EMAIL + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+        List<Thread> sellers = new ArrayList<>();
+        List<Exception> errors = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            int share = tickets / connections + (c < tickets % connections ? 1 : 0);
+            Random random = new Random(c);
+            Thread seller = new Thread(() -> {
+                List<UserRegistration> registrations = new ArrayList<>(share);
+                for (int i = 0; i < share; i++) {
+                    registrations.add(new UserRegistration("seller" + random.nextInt(emails) + "@example.com",
+                            firstSlot.plusHours(random.nextInt(24)), random.nextInt(256)));
+                }
+                try (BulkClient client = new BulkClient(host, port, batchSize, windowSize)) {
+                    for (byte status : client.register(registrations)) {
+                        counts[status].increment();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            }, "bulk-seller-" + (c + 1));
+            seller.start();
+            sellers.add(seller);
+        }
+        for (Thread seller : sellers) {
+            seller.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (Exception e : errors) {
+            System.err.println("Connection failed: " + e.getMessage());
+        }
+        long done = 0;
+        for (LongAdder count : counts) {
+            done += count.sum();
+        }
+        System.out.printf("%d tickets in %.2f s over %d connection(s): %.0f tickets/s%n",
+                done, seconds, connections, done / seconds);
+        for (byte status = 0; status < counts.length; status++) {
+            if (counts[status].sum() > 0) {
+                System.out.printf("  %8d  %s%n", counts[status].sum(), WireCodec.describeStatus(status));
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package lottery;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Accepts client connections in front of a lottery cluster and sends every
+ * ticket to the node owning its slot. Clients keep speaking the normal socket
+ * protocol: registrations are split by owner and the replies merged back in
+ * the original order, and history queries are asked of all nodes and merged by
+ * drawing time.
+ */
+public class ClusterRouter {
+    private final ClusterTopology topology;
+    // The nodes only see the router's address, so limits per client address are applied here.
+    private final AdmissionControl admission = AdmissionControl.fromProperties();
+    private final int readTimeoutMillis = Integer.getInteger("lottery.readTimeoutMs", 10_000);
+    // Runs the requests to the nodes of a split registration or a history query in parallel.
+    private final ExecutorService fanOut = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "router-fan-out");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a router.
+     *
+     * @param topology The cluster to route to.
+     */
+    public ClusterRouter(ClusterTopology topology) {
+        this.topology = topology;
+    }
+
+    /**
+     * Accepts client connections until the thread is interrupted.
+     *
+     * @param port The port clients connect to.
+     * @throws IOException If the port cannot be bound.
+     */
+    public void start(int port) throws IOException {
+        ConnectionEngine connectionEngine = ConnectionEngine.create(System.getProperty("lottery.engine", "pool"),
+                Integer.getInteger("lottery.workers", 64),
+                Integer.getInteger("lottery.maxConnections", 4096));
+        try (ServerSocket serverSocket = new ServerSocket(port, Integer.getInteger("lottery.backlog", 1024))) {
+            System.out.println("Cluster router is ready for " + topology.size() + " nodes on port " + port);
+            while (!Thread.interrupted()) {
+                try {
+                    Socket client = serverSocket.accept();
+                    client.setSoTimeout(readTimeoutMillis);
+                    if (!connectionEngine.submit(new RouterHandler(client))) {
+                        client.close();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            connectionEngine.close();
+        }
+    }
+
+    private class RouterHandler implements Runnable {
+        private final Socket clientSocket;
+        // One connection per node for this client, so pipelined bulk batches stay in order.
+        private final NodeConnection[] nodes = new NodeConnection[topology.size()];
+
+        RouterHandler(Socket socket) {
+            this.clientSocket = socket;
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = new NodeConnection(topology.node(i), readTimeoutMillis);
+            }
+        }
+
+        @Override
+        public void run() {
+            try (
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+                    OutputStream out = new BufferedOutputStream(clientSocket.getOutputStream())
+            ) {
+                boolean keepOpen = true;
+                while (keepOpen) {
+                    WireCodec.Frame request = WireCodec.readFrame(in);
+                    keepOpen = false;
+                    if (!admission.admitRequest(clientSocket.getInetAddress())) {
+                        WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText(LotteryServer.TOO_MANY_REQUESTS));
+                        keepOpen = request.type() == WireCodec.BULK_REGISTER;
+                    } else if (request.type() == WireCodec.REGISTER) {
+                        routeReg(request.payload(), out);
+                    } else if (request.type() == WireCodec.HISTORY) {
+                        routeHistory(request.payload(), out);
+                    } else if (request.type() == WireCodec.WINNERS) {
+                        routeWinners(request.payload(), out);
+                    } else if (request.type() == WireCodec.BULK_REGISTER) {
+                        routeBulkReg(request.payload(), out);
+                        keepOpen = true;
+                    } else {
+                        WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Unknown request type."));
+                    }
+                    out.flush();
+                }
+            } catch (EOFException e) {
+                // The client closed the connection between two frames.
+            } catch (IOException e) {
+                System.err.println("IO Exception in Router Handler: " + e.getMessage());
+            } finally {
+                for (NodeConnection node : nodes) {
+                    node.close();
+                }
+                try {
+                    clientSocket.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing socket: " + e.getMessage());
+                }
+            }
+        }
+
+        private void routeReg(ByteBuffer payload, OutputStream out) throws IOException {
+            List<UserRegistration> registrations;
+            try {
+                registrations = WireCodec.decodeRegistrations(payload.duplicate());
+            } catch (IOException | RuntimeException e) {
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Invalid registration data received."));
+                return;
+            }
+            int owner = registrations.isEmpty() ? 0 : topology.ownerOf(registrations.get(0).getRegDate());
+            boolean singleOwner = true;
+            for (UserRegistration registration : registrations) {
+                singleOwner &= topology.ownerOf(registration.getRegDate()) == owner;
+            }
+            if (singleOwner) {
+                // The node checks and stores the whole request at once, as a standalone server would.
+                WireCodec.Frame reply;
+                try {
+                    reply = nodes[owner].exchange(WireCodec.REGISTER, payload, false);
+                } catch (IOException e) {
+                    System.err.println("Cannot reach node " + owner + ": " + e.getMessage());
+                    WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Registration could not be stored."));
+                    return;
+                }
+                WireCodec.writeFrame(out, reply.type(), reply.payload());
+                return;
+            }
+
+            // Tickets for slots on several nodes cannot be stored atomically: report which part was.
+            byte[] statuses = registerSplit(0, registrations);
+            int accepted = 0;
+            byte firstRejection = WireCodec.ACCEPTED;
+            for (byte status : statuses) {
+                if (status == WireCodec.ACCEPTED) {
+                    accepted++;
+                } else if (firstRejection == WireCodec.ACCEPTED) {
+                    firstRejection = status;
+                }
+            }
+            if (accepted == statuses.length) {
+                WireCodec.writeFrame(out, WireCodec.OK, WireCodec.encodeText("OK"));
+            } else {
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText(WireCodec.describeStatus(firstRejection)
+                        + " (" + accepted + " of " + statuses.length + " tickets were registered.)"));
+            }
+        }
+
+        private void routeBulkReg(ByteBuffer payload, OutputStream out) throws IOException {
+            WireCodec.BulkRequest request;
+            try {
+                request = WireCodec.decodeBulkRegistrations(payload);
+            } catch (IOException | RuntimeException e) {
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Invalid registration data received."));
+                return;
+            }
+            byte[] statuses = registerSplit(request.batchId(), request.registrations());
+            WireCodec.writeFrame(out, WireCodec.BULK_RESULT, WireCodec.encodeBulkResult(request.batchId(), statuses));
+        }
+
+        // Sends every node its share of the tickets as one bulk batch and puts the statuses back in order.
+        private byte[] registerSplit(int batchId, List<UserRegistration> registrations) {
+            List<List<UserRegistration>> shares = new ArrayList<>();
+            List<List<Integer>> positions = new ArrayList<>();
+            for (int i = 0; i < nodes.length; i++) {
+                shares.add(new ArrayList<>());
+                positions.add(new ArrayList<>());
+            }
+            for (int i = 0; i < registrations.size(); i++) {
+                int owner = topology.ownerOf(registrations.get(i).getRegDate());
+                shares.get(owner).add(registrations.get(i));
+                positions.get(owner).add(i);
+            }
+            List<CompletableFuture<WireCodec.Frame>> replies = new ArrayList<>();
+            for (int node = 0; node < nodes.length; node++) {
+                replies.add(shares.get(node).isEmpty() ? null
+                        : ask(node, WireCodec.BULK_REGISTER, WireCodec.encodeBulkRegistrations(batchId, shares.get(node)), true));
+            }
+
+            byte[] statuses = new byte[registrations.size()];
+            for (int node = 0; node < nodes.length; node++) {
+                if (replies.get(node) == null) {
+                    continue;
+                }
+                byte[] nodeStatuses = null;
+                WireCodec.Frame reply = replies.get(node).join();
+                if (reply != null && reply.type() == WireCodec.BULK_RESULT) {
+                    try {
+                        nodeStatuses = WireCodec.decodeBulkResult(reply.payload()).statuses();
+                    } catch (IOException e) {
+                        System.err.println("Invalid bulk result from node " + node + ": " + e.getMessage());
+                    }
+                }
+                List<Integer> nodePositions = positions.get(node);
+                for (int i = 0; i < nodePositions.size(); i++) {
+                    statuses[nodePositions.get(i)] = nodeStatuses != null && i < nodeStatuses.length
+                            ? nodeStatuses[i] : WireCodec.REJECTED_NOT_STORED;
+                }
+            }
+            return statuses;
+        }
+
+        private void routeWinners(ByteBuffer payload, OutputStream out) throws IOException {
+            int owner;
+            try {
+                owner = topology.ownerOf(WireCodec.decodeWinnersRequest(payload.duplicate()).slot());
+            } catch (IOException e) {
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Invalid winners request."));
+                return;
+            }
+            WireCodec.Frame reply;
+            try {
+                reply = nodes[owner].exchange(WireCodec.WINNERS, payload, false);
+            } catch (IOException e) {
+                System.err.println("Cannot reach node " + owner + ": " + e.getMessage());
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Node " + owner + " is not available."));
+                return;
+            }
+            WireCodec.writeFrame(out, reply.type(), reply.payload());
+        }
+
+        private void routeHistory(ByteBuffer payload, OutputStream out) throws IOException {
+            List<CompletableFuture<WireCodec.Frame>> replies = new ArrayList<>();
+            for (int node = 0; node < nodes.length; node++) {
+                replies.add(ask(node, WireCodec.HISTORY, payload.duplicate(), false));
+            }
+            ArrayList<LotteryResult> results = new ArrayList<>();
+            // A node whose reply was cut short is only complete up to its last result,
+            // so the merged reply stops there as well.
+            LocalDateTime complete = null;
+            for (int node = 0; node < nodes.length; node++) {
+                WireCodec.Frame reply = replies.get(node).join();
+                if (reply == null) {
+                    WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Node " + node + " is not available."));
+                    return;
+                }
+                if (reply.type() != WireCodec.RESULTS) {
+                    // Every node validates the period the same way: pass the first refusal on.
+                    WireCodec.writeFrame(out, reply.type(), reply.payload());
+                    return;
+                }
+                ArrayList<LotteryResult> nodeResults = WireCodec.decodeResults(reply.payload());
+                if (nodeResults.size() == WireCodec.MAX_RESULTS) {
+                    LocalDateTime last = nodeResults.get(nodeResults.size() - 1).getResultDate();
+                    complete = complete == null || last.isBefore(complete) ? last : complete;
+                }
+                results.addAll(nodeResults);
+            }
+            if (complete != null) {
+                LocalDateTime end = complete;
+                results.removeIf(result -> result.getResultDate().isAfter(end));
+            }
+            results.sort(Comparator.comparing(LotteryResult::getResultDate));
+            WireCodec.writeFrame(out, WireCodec.RESULTS, WireCodec.encodeResults(results));
+        }
+
+        // The reply of a node, or null when it cannot be reached.
+        private CompletableFuture<WireCodec.Frame> ask(int node, byte type, ByteBuffer payload, boolean keepOpen) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return nodes[node].exchange(type, payload, keepOpen);
+                } catch (IOException e) {
+                    System.err.println("Cannot reach node " + node + ": " + e.getMessage());
+                    return null;
+                }
+            }, fanOut);
+        }
+    }
+
+    /**
+     * Starts a router for the nodes listed in lottery.cluster, listening on
+     * lottery.port.
+     */
+    public static void main(String[] args) throws IOException {
+        String cluster = System.getProperty("lottery.cluster");
+        if (cluster == null || cluster.isBlank()) {
+            System.err.println("Set lottery.cluster to the comma separated host:port of the nodes.");
+            return;
+        }
+        ClusterRouter router = new ClusterRouter(new ClusterTopology(ClusterTopology.parse(cluster), -1));
+        router.start(Integer.getInteger("lottery.port", LotteryServer.PORT));
+    }
+}
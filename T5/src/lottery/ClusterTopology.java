@@ -0,0 +1,174 @@
+package lottery;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The nodes of a lottery cluster and which of them owns a drawing slot. Slots
+ * are partitioned by a hash of their epoch hour, so consecutive hours, and the
+ * load of a busy evening, are spread over all nodes. The owner of a slot is the
+ * only node that registers tickets for it, keeps its pool and draws it.
+ */
+public class ClusterTopology {
+    private final List<InetSocketAddress> nodes;
+    private final int self;
+    private final List<InetSocketAddress> routers;
+
+    /**
+     * Creates a topology.
+     *
+     * @param nodes The nodes of the cluster, in the same order on every node.
+     * @param self  The index of this node, or -1 for a router.
+     */
+    public ClusterTopology(List<InetSocketAddress> nodes, int self) {
+        this(nodes, self, List.of());
+    }
+
+    /**
+     * Creates a topology with the routers in front of it.
+     *
+     * @param nodes   The nodes of the cluster, in the same order on every node.
+     * @param self    The index of this node, or -1 for a router.
+     * @param routers The routers that forward client requests to the nodes.
+     */
+    public ClusterTopology(List<InetSocketAddress> nodes, int self, List<InetSocketAddress> routers) {
+        if (nodes.isEmpty() || self < -1 || self >= nodes.size()) {
+            throw new IllegalArgumentException("Invalid cluster of " + nodes.size() + " nodes with node index " + self);
+        }
+        this.nodes = List.copyOf(nodes);
+        this.self = self;
+        this.routers = List.copyOf(routers);
+    }
+
+    /**
+     * Reads the topology from the lottery.cluster property, a comma separated
+     * list of host:port, lottery.nodeIndex and lottery.routers, the host:port
+     * of the routers.
+     *
+     * @return The topology, or null when the server runs standalone.
+     */
+    public static ClusterTopology fromProperties() {
+        String cluster = System.getProperty("lottery.cluster");
+        if (cluster == null || cluster.isBlank()) {
+            return null;
+        }
+        String routers = System.getProperty("lottery.routers", "");
+        return new ClusterTopology(parse(cluster), Integer.getInteger("lottery.nodeIndex", -1),
+                routers.isBlank() ? List.of() : parse(routers));
+    }
+
+    /**
+     * Parses a comma separated list of host:port.
+     *
+     * @param cluster The node list.
+     * @return The node addresses.
+     */
+    public static List<InetSocketAddress> parse(String cluster) {
+        List<InetSocketAddress> nodes = new ArrayList<>();
+        for (String node : cluster.split(",")) {
+            int colon = node.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Expected host:port but got " + node);
+            }
+            nodes.add(InetSocketAddress.createUnresolved(node.substring(0, colon).trim(),
+                    Integer.parseInt(node.substring(colon + 1).trim())));
+        }
+        return nodes;
+    }
+
+    /**
+     * Gets the node owning a slot.
+     *
+     * @param slot The drawing slot.
+     * @return The index of the owning node.
+     */
+    public int ownerOf(LocalDateTime slot) {
+        // Murmur3 finalizer: spreads neighbouring hours evenly over the nodes.
+        int h = EpochHours.of(slot);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, nodes.size());
+    }
+
+    /**
+     * Checks whether this node owns a slot.
+     *
+     * @param slot The drawing slot.
+     * @return true if the slot is registered and drawn here.
+     */
+    public boolean isLocal(LocalDateTime slot) {
+        return ownerOf(slot) == self;
+    }
+
+    /**
+     * Gets the address of a node.
+     *
+     * @param index The index of the node.
+     * @return The host and port of the node.
+     */
+    public InetSocketAddress node(int index) {
+        return nodes.get(index);
+    }
+
+    /**
+     * Checks whether a connection comes from the host of a node. Node names are
+     * resolved on every call, as the JVM caches lookups anyway and the peers
+     * only connect to send rollovers.
+     *
+     * @param address The remote address of the connection.
+     * @return true if a node of the cluster runs at that address.
+     */
+    public boolean isNode(InetAddress address) {
+        return resolvesTo(nodes, address);
+    }
+
+    /**
+     * Checks whether a connection comes from the host of a router.
+     *
+     * @param address The remote address of the connection.
+     * @return true if a router of the cluster runs at that address.
+     */
+    public boolean isRouter(InetAddress address) {
+        return resolvesTo(routers, address);
+    }
+
+    private static boolean resolvesTo(List<InetSocketAddress> hosts, InetAddress address) {
+        for (InetSocketAddress host : hosts) {
+            try {
+                for (InetAddress resolved : InetAddress.getAllByName(host.getHostString())) {
+                    if (resolved.equals(address)) {
+                        return true;
+                    }
+                }
+            } catch (UnknownHostException e) {
+                // A node that cannot be resolved cannot be the sender either.
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of nodes.
+     *
+     * @return The cluster size.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Gets the index of this node.
+     *
+     * @return The node index, or -1 for a router.
+     */
+    public int self() {
+        return self;
+    }
+}
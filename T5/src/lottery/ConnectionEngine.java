@@ -0,0 +1,43 @@
+package lottery;
+
+/**
+ * Runs the request/reply exchange of accepted client connections. The engine
+ * decides on which thread a connection is served and how many connections may
+ * be in progress at once; a connection it cannot take is refused right away.
+ */
+public interface ConnectionEngine extends AutoCloseable {
+
+    /**
+     * Hands an accepted connection to the engine.
+     *
+     * @param connection Serves one client connection.
+     * @return false if the engine is saturated and the connection was refused.
+     */
+    boolean submit(Runnable connection);
+
+    /**
+     * Stops accepting connections and lets the ones in progress finish.
+     */
+    @Override
+    void close();
+
+    /**
+     * Creates the engine selected by name: "virtual" for one virtual thread per
+     * connection, anything else for a bounded pool of platform threads.
+     *
+     * @param mode           The engine name.
+     * @param workers        The number of pool threads.
+     * @param maxConnections The number of connections that may wait or run at once.
+     * @return The connection engine.
+     */
+    static ConnectionEngine create(String mode, int workers, int maxConnections) {
+        if ("virtual".equalsIgnoreCase(mode)) {
+            try {
+                return new VirtualThreadEngine(maxConnections);
+            } catch (UnsupportedOperationException e) {
+                System.err.println(e.getMessage() + ", falling back to the worker pool engine.");
+            }
+        }
+        return new WorkerPoolEngine(workers, Math.max(0, maxConnections - workers));
+    }
+}
@@ -0,0 +1,168 @@
+package lottery;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * The randomness of the draws. The winning number of a slot is taken from a
+ * seed derived from a secret and the slot alone, so it does not depend on which
+ * thread draws the slot or on anything served before, and a draw can be
+ * replayed. The secret is made once by SecureRandom and kept in the data
+ * directory. The hash of every seed, its commitment, can be published before
+ * the draw; the seed itself is revealed after it, and anyone can then check
+ * both the commitment and the winning number.
+ */
+public class DrawRandom {
+    private static final byte[] DOMAIN = "lottery-draw-seed".getBytes(StandardCharsets.US_ASCII);
+    private static final int SECRET_BYTES = 32;
+    /** The size of a seed and of its commitment. */
+    public static final int COMMITMENT_BYTES = 32;
+
+    private final byte[] secret;
+
+    /**
+     * Creates the draw randomness from a known secret, as needed to replay draws.
+     *
+     * @param secret The secret of at least 32 bytes.
+     */
+    public DrawRandom(byte[] secret) {
+        if (secret.length < SECRET_BYTES) {
+            throw new IllegalArgumentException("The draw secret needs " + SECRET_BYTES + " bytes");
+        }
+        this.secret = secret.clone();
+    }
+
+    /**
+     * Loads the secret of a data directory, creating it on first use.
+     *
+     * @param dataDir The data directory.
+     * @return The draw randomness of the server.
+     * @throws IOException If the secret cannot be read or stored.
+     */
+    public static DrawRandom open(Path dataDir) throws IOException {
+        Path file = dataDir.resolve("draw.secret");
+        if (!Files.exists(file)) {
+            Files.createDirectories(dataDir);
+            byte[] secret = new byte[SECRET_BYTES];
+            new SecureRandom().nextBytes(secret);
+            Path created = dataDir.resolve("draw.secret.new");
+            Files.write(created, secret);
+            try {
+                Files.setPosixFilePermissions(created, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system: rely on the permissions of the data directory.
+            }
+            try {
+                Files.move(created, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Another server created it first; use theirs.
+                Files.delete(created);
+            }
+        }
+        return new DrawRandom(Files.readAllBytes(file));
+    }
+
+    /**
+     * Derives the seed of a slot.
+     *
+     * @param slot The drawing slot.
+     * @return The 32 byte seed.
+     */
+    public byte[] seed(LocalDateTime slot) {
+        MessageDigest sha256 = sha256();
+        sha256.update(DOMAIN);
+        sha256.update(secret);
+        sha256.update(ByteBuffer.allocate(4).putInt(EpochHours.of(slot)).array());
+        return sha256.digest();
+    }
+
+    /**
+     * Gets the commitment to the seed of a slot, which reveals nothing of the seed.
+     *
+     * @param slot The drawing slot.
+     * @return The SHA-256 hash of the seed.
+     */
+    public byte[] commitment(LocalDateTime slot) {
+        return commit(seed(slot));
+    }
+
+    /**
+     * Draws the winning number of a slot.
+     *
+     * @param slot The drawing slot.
+     * @return The number from 0 to 255.
+     */
+    public int number(LocalDateTime slot) {
+        return numberOf(seed(slot));
+    }
+
+    /**
+     * Computes the winning number a seed gives.
+     *
+     * @param seed The seed of a slot.
+     * @return The number from 0 to 255.
+     */
+    public static int numberOf(byte[] seed) {
+        // Every byte value is equally likely, so one byte of the hash is an unbiased number.
+        return seed[0] & 0xFF;
+    }
+
+    /**
+     * Computes the commitment to a seed.
+     *
+     * @param seed The seed of a slot.
+     * @return The SHA-256 hash of the seed.
+     */
+    public static byte[] commit(byte[] seed) {
+        return sha256().digest(seed);
+    }
+
+    /**
+     * Checks a revealed seed against the published commitment and result.
+     *
+     * @param seed          The revealed seed.
+     * @param commitment    The commitment published with the draw.
+     * @param winningNumber The published winning number.
+     * @return true if the seed matches the commitment and gives the winning number.
+     */
+    public static boolean verify(byte[] seed, byte[] commitment, int winningNumber) {
+        return MessageDigest.isEqual(commit(seed), commitment) && numberOf(seed) == winningNumber;
+    }
+
+    /**
+     * Formats a seed or commitment for display.
+     *
+     * @param bytes The bytes.
+     * @return Lower case hex.
+     */
+    public static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    @Override
+    public String toString() {
+        // Never print the secret.
+        return "DrawRandom[" + hex(Arrays.copyOf(commit(secret), 4)) + "]";
+    }
+
+    // A new digest per call: the derivation shares no state between threads.
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+}
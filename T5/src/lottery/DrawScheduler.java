@@ -0,0 +1,74 @@
+package lottery;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the draw on every hour boundary of the lottery clock. The waiting is
+ * done by a scheduled executor, which measures delays on the monotonic clock;
+ * long waits are cut into steps so a jump of the wall clock is noticed within
+ * one step. The draw also runs right after start, to catch up on slots missed
+ * while the server was down.
+ */
+public class DrawScheduler implements AutoCloseable {
+    private static final long MAX_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Runnable draw;
+    private final LotteryClock clock;
+    private final ScheduledExecutorService executor;
+    private LocalDateTime nextDraw;
+
+    /**
+     * Creates the scheduler.
+     *
+     * @param draw  Draws every slot that is due at the time it runs.
+     * @param clock The clock whose hours the draws follow.
+     */
+    public DrawScheduler(Runnable draw, LotteryClock clock) {
+        this.draw = draw;
+        this.clock = clock;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "draw-scheduler"));
+    }
+
+    /**
+     * Catches up on due slots, then keeps drawing on every hour.
+     */
+    public void start() {
+        executor.execute(this::tick);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    // Draws once the next hour has come, then schedules itself again. Every step is a new
+    // task, so a clock running faster than the draws never deepens the stack.
+    private void tick() {
+        if (nextDraw == null || getMillisUntil(nextDraw) <= 0) {
+            try {
+                draw.run();
+            } catch (Throwable e) {
+                // Whatever went wrong, the next hour is drawn again.
+                System.err.println("Error in draw: " + e);
+                e.printStackTrace();
+            }
+            nextDraw = clock.now().plusHours(1).truncatedTo(ChronoUnit.HOURS);
+        }
+        long wait = Math.max(0, Math.min(getMillisUntil(nextDraw), MAX_WAIT_MILLIS));
+        try {
+            executor.schedule(this::tick, wait, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed.
+        }
+    }
+
+    // Real milliseconds, to be waited on the executor.
+    private long getMillisUntil(LocalDateTime time) {
+        return clock.toRealMillis(ChronoUnit.MILLIS.between(clock.now(), time));
+    }
+}
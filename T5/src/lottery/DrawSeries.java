@@ -0,0 +1,196 @@
+package lottery;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The summaries of the recorded draws as a time series: one primitive array
+ * per field, sorted by slot. A draw costs a few dozen bytes whatever its
+ * number of winners, and a period query is a binary search followed by a scan
+ * of the columns. Draws normally arrive in slot order and are appended; an
+ * older slot drawn late is inserted in place.
+ */
+public class DrawSeries {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int[] hours = new int[1024];
+    private byte[] numbers = new byte[1024];
+    private int[] tickets = new int[1024];
+    private int[] winners = new int[1024];
+    private long[] prizeOre = new long[1024];
+    private long[] rolloverInOre = new long[1024];
+    private long[] rolloverOutOre = new long[1024];
+    // The seed commitments, DrawRandom.COMMITMENT_BYTES per draw.
+    private byte[] commitments = new byte[1024 * DrawRandom.COMMITMENT_BYTES];
+    // Where the winners of each draw are kept, for the caller's own lookups.
+    private long[] positions = new long[1024];
+    private int size;
+
+    /**
+     * Adds the summary of a draw.
+     *
+     * @param result   The draw summary; it replaces an earlier summary of the same slot.
+     * @param position The position of the draw's winners, returned by positionOf.
+     */
+    public void add(LotteryResult result, long position) {
+        int hour = EpochHours.of(result.getResultDate());
+        lock.writeLock().lock();
+        try {
+            int index = size == 0 || hours[size - 1] < hour ? size : Arrays.binarySearch(hours, 0, size, hour);
+            if (index < 0) {
+                index = -(index + 1);
+            }
+            if (index == size || hours[index] != hour) {
+                if (size == hours.length) {
+                    grow();
+                }
+                if (index < size) {
+                    shift(index);
+                }
+                size++;
+            }
+            hours[index] = hour;
+            numbers[index] = (byte) result.getWinTicketNum();
+            tickets[index] = result.getTicketCount();
+            winners[index] = result.getWinnerCount();
+            prizeOre[index] = result.getPrizeOre();
+            rolloverInOre[index] = result.getRolloverInOre();
+            rolloverOutOre[index] = result.getRolloverOutOre();
+            System.arraycopy(result.getSeedCommitment(), 0, commitments, index * DrawRandom.COMMITMENT_BYTES,
+                    DrawRandom.COMMITMENT_BYTES);
+            positions[index] = position;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether a slot has been drawn.
+     *
+     * @param slot The drawing slot.
+     * @return true if the series holds the slot.
+     */
+    public boolean contains(LocalDateTime slot) {
+        return positionOf(slot) >= 0;
+    }
+
+    /**
+     * Gets the position stored with a draw.
+     *
+     * @param slot The drawing slot.
+     * @return The position, or -1 if the slot has not been drawn.
+     */
+    public long positionOf(LocalDateTime slot) {
+        lock.readLock().lock();
+        try {
+            int index = Arrays.binarySearch(hours, 0, size, EpochHours.of(slot));
+            return index < 0 ? -1 : positions[index];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the summaries of the draws within a period, in slot order.
+     *
+     * @param from The start of the period (inclusive).
+     * @param to   The end of the period (inclusive).
+     * @return The draw summaries.
+     */
+    public List<LotteryResult> between(LocalDateTime from, LocalDateTime to) {
+        return between(from, to, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the first summaries of the draws within a period, in slot order.
+     *
+     * @param from  The start of the period (inclusive).
+     * @param to    The end of the period (inclusive).
+     * @param limit The maximum number of summaries.
+     * @return The draw summaries.
+     */
+    public List<LotteryResult> between(LocalDateTime from, LocalDateTime to, int limit) {
+        // Slots are on the hour: the first one at or after from, the last one at or before to.
+        int fromHour = EpochHours.of(from) + (EpochHours.toDateTime(EpochHours.of(from)).equals(from) ? 0 : 1);
+        int toHour = EpochHours.of(to);
+        lock.readLock().lock();
+        try {
+            int first = lowerBound(fromHour);
+            int last = (int) Math.min(lowerBound(toHour + 1), (long) first + limit);
+            List<LotteryResult> results = new ArrayList<>(Math.max(0, last - first));
+            for (int i = first; i < last; i++) {
+                results.add(new LotteryResult(EpochHours.toDateTime(hours[i]), numbers[i] & 0xFF, tickets[i], winners[i],
+                        prizeOre[i], rolloverInOre[i], rolloverOutOre[i], Arrays.copyOfRange(commitments,
+                        i * DrawRandom.COMMITMENT_BYTES, (i + 1) * DrawRandom.COMMITMENT_BYTES)));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the slot of a draw by its place within a period.
+     *
+     * @param from  The start of the period (inclusive).
+     * @param to    The end of the period (inclusive).
+     * @param index The number of draws of the period before it.
+     * @return The drawing slot, or null if the period has no more draws.
+     */
+    public LocalDateTime slotAt(LocalDateTime from, LocalDateTime to, int index) {
+        int fromHour = EpochHours.of(from) + (EpochHours.toDateTime(EpochHours.of(from)).equals(from) ? 0 : 1);
+        int toHour = EpochHours.of(to);
+        lock.readLock().lock();
+        try {
+            long i = (long) lowerBound(fromHour) + index;
+            return i < lowerBound(toHour + 1) ? EpochHours.toDateTime(hours[(int) i]) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The index of the first hour at or after the given one.
+    private int lowerBound(int hour) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hours[mid] < hour) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void grow() {
+        int capacity = hours.length * 2;
+        hours = Arrays.copyOf(hours, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+        tickets = Arrays.copyOf(tickets, capacity);
+        winners = Arrays.copyOf(winners, capacity);
+        prizeOre = Arrays.copyOf(prizeOre, capacity);
+        rolloverInOre = Arrays.copyOf(rolloverInOre, capacity);
+        rolloverOutOre = Arrays.copyOf(rolloverOutOre, capacity);
+        commitments = Arrays.copyOf(commitments, capacity * DrawRandom.COMMITMENT_BYTES);
+        positions = Arrays.copyOf(positions, capacity);
+    }
+
+    private void shift(int index) {
+        int count = size - index;
+        System.arraycopy(hours, index, hours, index + 1, count);
+        System.arraycopy(numbers, index, numbers, index + 1, count);
+        System.arraycopy(tickets, index, tickets, index + 1, count);
+        System.arraycopy(winners, index, winners, index + 1, count);
+        System.arraycopy(prizeOre, index, prizeOre, index + 1, count);
+        System.arraycopy(rolloverInOre, index, rolloverInOre, index + 1, count);
+        System.arraycopy(rolloverOutOre, index, rolloverOutOre, index + 1, count);
+        System.arraycopy(commitments, index * DrawRandom.COMMITMENT_BYTES, commitments,
+                (index + 1) * DrawRandom.COMMITMENT_BYTES, count * DrawRandom.COMMITMENT_BYTES);
+        System.arraycopy(positions, index, positions, index + 1, count);
+    }
+}
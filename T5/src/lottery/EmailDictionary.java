@@ -0,0 +1,69 @@
+package lottery;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every email address a small integer id, so tickets can refer to their
+ * owner with an int instead of holding a copy of the address each.
+ */
+public class EmailDictionary {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] emails = new String[1024];
+    private int count;
+
+    /**
+     * Gets the id of an email address, assigning a new one on first use.
+     *
+     * @param email The email address.
+     * @return The id of the address.
+     */
+    public int idOf(String email) {
+        Integer id = ids.get(email);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(email);
+            if (id != null) {
+                return id;
+            }
+            if (count == emails.length) {
+                emails = Arrays.copyOf(emails, count * 2);
+            }
+            emails[count] = email;
+            // Published after the array slot is written, so any reader of the id sees the address.
+            ids.put(email, count);
+            return count++;
+        }
+    }
+
+    /**
+     * Gets the id of an email address without assigning one.
+     *
+     * @param email The email address.
+     * @return The id of the address, or -1 if it has none.
+     */
+    public int find(String email) {
+        return ids.getOrDefault(email, -1);
+    }
+
+    /**
+     * Gets the email address of an id.
+     *
+     * @param id An id returned by idOf.
+     * @return The email address.
+     */
+    public String email(int id) {
+        return emails[id];
+    }
+
+    /**
+     * Gets the number of addresses in the dictionary.
+     *
+     * @return The number of addresses.
+     */
+    public int size() {
+        return ids.size();
+    }
+}
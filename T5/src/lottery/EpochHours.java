@@ -0,0 +1,33 @@
+package lottery;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Converts drawing slots to and from hours since the epoch. Slot times are
+ * wall clock hours of the server and are mapped as if they were UTC.
+ */
+public final class EpochHours {
+    private EpochHours() {
+    }
+
+    /**
+     * Gets the epoch hour of a slot, truncating minutes and seconds.
+     *
+     * @param dateTime The slot time.
+     * @return The hours since 1970-01-01T00:00.
+     */
+    public static int of(LocalDateTime dateTime) {
+        return (int) Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 3600L);
+    }
+
+    /**
+     * Gets the slot time of an epoch hour.
+     *
+     * @param epochHour The hours since 1970-01-01T00:00.
+     * @return The slot time.
+     */
+    public static LocalDateTime toDateTime(int epochHour) {
+        return LocalDateTime.ofEpochSecond(epochHour * 3600L, 0, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,171 @@
+package lottery;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Keeps encoded history replies, so clients polling the same window are served
+ * without reading the ledger or encoding the results again. Ranges are
+ * normalized to whole hours, the slots draws take place on, and entries are
+ * evicted least recently used first once the cache holds too many bytes. A new
+ * draw result only drops the entries whose range contains its slot.
+ */
+public class HistoryCache {
+    // Rough per-entry cost of the map entry, key and array header.
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Long, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    // Bumped by every invalidation, so a reply encoded before a draw is never cached after it.
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxBytes The maximum size of the cached replies; 0 disables the cache.
+     */
+    public HistoryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the encoded results of a period, encoding and caching them on a miss.
+     *
+     * @param from    The start of the period (inclusive).
+     * @param to      The end of the period (inclusive).
+     * @param encoder Encodes the results between two whole hours, both inclusive.
+     * @return The encoded reply.
+     */
+    public ByteBuffer get(LocalDateTime from, LocalDateTime to, BiFunction<LocalDateTime, LocalDateTime, ByteBuffer> encoder) {
+        // The first whole hour at or after from, and the last one at or before to.
+        int fromHour = EpochHours.of(from) + (EpochHours.toDateTime(EpochHours.of(from)).equals(from) ? 0 : 1);
+        int toHour = EpochHours.of(to);
+        long key = ((long) fromHour << 32) | (toHour & 0xFFFFFFFFL);
+        long seenGeneration;
+        synchronized (this) {
+            byte[] cached = entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                return ByteBuffer.wrap(cached);
+            }
+            seenGeneration = generation;
+        }
+        misses.increment();
+        byte[] encoded = toArray(encoder.apply(EpochHours.toDateTime(fromHour), EpochHours.toDateTime(toHour)));
+        long size = encoded.length + ENTRY_OVERHEAD;
+        // A single reply may take a quarter of the cache at most, so one huge range cannot flush it.
+        if (size <= maxBytes / 4) {
+            synchronized (this) {
+                if (generation == seenGeneration && entries.put(key, encoded) == null) {
+                    bytes += size;
+                    evict();
+                }
+            }
+        }
+        return ByteBuffer.wrap(encoded);
+    }
+
+    /**
+     * Drops the entries whose period contains a newly drawn slot.
+     *
+     * @param slot The slot whose result was recorded.
+     */
+    public synchronized void invalidate(LocalDateTime slot) {
+        generation++;
+        int hour = EpochHours.of(slot);
+        for (Iterator<Map.Entry<Long, byte[]>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, byte[]> entry = it.next();
+            int fromHour = (int) (entry.getKey() >> 32);
+            int toHour = (int) (long) entry.getKey();
+            if (fromHour <= hour && hour <= toHour) {
+                bytes -= entry.getValue().length + ENTRY_OVERHEAD;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of lookups served from the cache.
+     *
+     * @return The hit count.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that had to encode the results.
+     *
+     * @return The miss count.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of entries evicted to stay within the size bound.
+     *
+     * @return The eviction count.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the share of lookups served from the cache.
+     *
+     * @return The hit ratio from 0 to 1, or 0 before the first lookup.
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    /**
+     * Gets the approximate memory taken by the cached replies.
+     *
+     * @return The cache size in bytes.
+     */
+    public synchronized long getSizeBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the number of cached replies.
+     *
+     * @return The entry count.
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private void evict() {
+        Iterator<byte[]> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().length + ENTRY_OVERHEAD;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return copy;
+    }
+}
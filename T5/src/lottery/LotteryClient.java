@@ -1,5 +1,8 @@
+package lottery;
+
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.time.Year;
 import java.util.ArrayList;
 import java.time.LocalDateTime;
@@ -15,7 +18,18 @@ public class LotteryClient {
         return matcher.matches();
     }
 
-    private static void handleRegData(ObjectInputStream in, ObjectOutputStream out, Scanner scanner) throws IOException {
+    // Single request / reply: every request gets its own connection.
+    private static WireCodec.Frame exchange(byte type, ByteBuffer payload) throws IOException {
+        try (Socket socket = new Socket("localhost", LotteryServer.PORT);
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            WireCodec.writeFrame(out, type, payload);
+            out.flush();
+            return WireCodec.readFrame(in);
+        }
+    }
+
+    private static void handleRegData(Scanner scanner) throws IOException {
         System.out.print("Welcome to register in our lottery system\nEnter email: ");
         String email = scanner.nextLine();
 
@@ -64,35 +78,72 @@ public class LotteryClient {
             registrations.add(new UserRegistration(email, date, number));
         }
 
-        out.writeObject("r");
-        out.writeObject(registrations);
-
-        String response;
-        try {
-            response = (String) in.readObject();
-        } catch (ClassNotFoundException e) {
-            response = "Error: Invalid response from server.";
+        WireCodec.Frame response = exchange(WireCodec.REGISTER, WireCodec.encodeRegistrations(registrations));
+        if (response.type() == WireCodec.OK || response.type() == WireCodec.ERROR) {
+            System.out.println(WireCodec.decodeText(response.payload()));
+        } else {
+            System.out.println("Error: Invalid response from server.");
         }
-        System.out.println(response);
     }
 
-    private static void handleHisData(ObjectInputStream in, ObjectOutputStream out, Scanner scanner) throws IOException, ClassNotFoundException {
+    private static void handleHisData(Scanner scanner) throws IOException {
         System.out.println("Enter the period for historical data:");
         LocalDateTime start = getRegData(scanner);
         LocalDateTime end = getRegData(scanner);
 
-        out.writeObject("h");
-        out.writeObject(start);
-        out.writeObject(end);
+        if (start == null || end == null) {
+            return;
+        }
 
-        Object response = in.readObject();
-        if (response instanceof String) {
-            System.out.println((String) response);
-        } else if (response instanceof ArrayList) {
-            ArrayList<LotteryResult> historicalRecords = (ArrayList<LotteryResult>) response;
+        while (true) {
+            WireCodec.Frame response = exchange(WireCodec.HISTORY, WireCodec.encodeHistoryRequest(start, end));
+            if (response.type() != WireCodec.RESULTS) {
+                System.out.println(WireCodec.decodeText(response.payload()));
+                return;
+            }
+            ArrayList<LotteryResult> historicalRecords = WireCodec.decodeResults(response.payload());
             for (LotteryResult record : historicalRecords) {
                 System.out.println(record);
             }
+            // A full reply may have been cut short; the rest follows its last draw.
+            if (historicalRecords.size() < WireCodec.MAX_RESULTS) {
+                return;
+            }
+            start = historicalRecords.get(historicalRecords.size() - 1).getResultDate().plusHours(1);
+            if (start.isAfter(end)) {
+                return;
+            }
+        }
+    }
+
+    private static void handleWinners(Scanner scanner) throws IOException {
+        System.out.println("Enter the drawing time:");
+        LocalDateTime slot = getRegData(scanner);
+        if (slot == null) {
+            return;
+        }
+
+        final int pageSize = 50;
+        int offset = 0;
+        while (true) {
+            WireCodec.Frame response = exchange(WireCodec.WINNERS, WireCodec.encodeWinnersRequest(slot, offset, pageSize));
+            if (response.type() != WireCodec.WINNER_PAGE) {
+                System.out.println(WireCodec.decodeText(response.payload()));
+                return;
+            }
+            ResultLedger.WinnerPage page = WireCodec.decodeWinnerPage(response.payload());
+            for (String email : page.emails()) {
+                System.out.println(email);
+            }
+            offset += page.emails().size();
+            System.out.println("Showing " + offset + " of " + page.total() + " winners.");
+            if (offset >= page.total() || page.emails().isEmpty()) {
+                return;
+            }
+            System.out.print("Show more? (y/n): ");
+            if (!"y".equalsIgnoreCase(scanner.nextLine())) {
+                return;
+            }
         }
     }
 
@@ -152,30 +203,27 @@ public class LotteryClient {
 
 
     public static void main(String[] args) {
-        try (Socket socket = new Socket("localhost", LotteryServer.PORT);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
-             Scanner scanner = new Scanner(System.in)) {
-
+        try (Scanner scanner = new Scanner(System.in)) {
             while (true) {
-                System.out.println("Enter:\n'r' to Register.\n'h' to retrieve historical data.\n'q' to quit.");
+                System.out.println("Enter:\n'r' to Register.\n'h' to retrieve historical data.\n'w' to list the winners of a drawing.\n'q' to quit.");
                 String input = scanner.nextLine();
 
-                if ("r".equalsIgnoreCase(input)) {
-                    handleRegData(in, out, scanner);
-                } else if ("h".equalsIgnoreCase(input)) {
-                    handleHisData(in, out, scanner);
-                } else if ("q".equalsIgnoreCase(input)) {
-                    break;
-                } else {
-                    System.out.println("Invalid input. Please try again.");
+                try {
+                    if ("r".equalsIgnoreCase(input)) {
+                        handleRegData(scanner);
+                    } else if ("h".equalsIgnoreCase(input)) {
+                        handleHisData(scanner);
+                    } else if ("w".equalsIgnoreCase(input)) {
+                        handleWinners(scanner);
+                    } else if ("q".equalsIgnoreCase(input)) {
+                        break;
+                    } else {
+                        System.out.println("Invalid input. Please try again.");
+                    }
+                } catch (IOException e) {
+                    System.err.println("Network error: " + e.getMessage());
                 }
             }
-
-        } catch (IOException e) {
-            System.err.println("Network error: " + e.getMessage());
-        } catch (ClassNotFoundException e) {
-            System.err.println("Error processing response from server: " + e.getMessage());
         }
     }
 
@@ -0,0 +1,52 @@
+package lottery;
+
+import java.time.LocalDateTime;
+
+/**
+ * The time the lottery runs on. It decides which slots are still open for
+ * registration and which are due for their draw. The server normally runs on
+ * the system clock; an accelerated clock lets a test go through a day of
+ * hourly draws in a few minutes.
+ */
+public interface LotteryClock {
+
+    /**
+     * Gets the current time of the lottery.
+     *
+     * @return The current date and time.
+     */
+    LocalDateTime now();
+
+    /**
+     * Converts a span of lottery time to the real time it takes to pass.
+     *
+     * @param clockMillis Milliseconds on this clock.
+     * @return The real milliseconds during which this clock advances by clockMillis.
+     */
+    long toRealMillis(long clockMillis);
+
+    /**
+     * Gets the clock that follows the wall clock of the system.
+     *
+     * @return The system clock.
+     */
+    static LotteryClock system() {
+        return SystemClock.INSTANCE;
+    }
+
+    /**
+     * Creates the clock selected by the system properties: the system clock,
+     * unless lottery.clockSpeed is set to run faster, starting at
+     * lottery.clockStart or the current time.
+     *
+     * @return The clock of the server.
+     */
+    static LotteryClock fromProperties() {
+        double speed = Double.parseDouble(System.getProperty("lottery.clockSpeed", "1"));
+        if (speed == 1) {
+            return system();
+        }
+        String start = System.getProperty("lottery.clockStart");
+        return new AcceleratedClock(start == null ? LocalDateTime.now() : LocalDateTime.parse(start), speed);
+    }
+}
@@ -0,0 +1,87 @@
+package lottery;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+
+public class LotteryResult implements Serializable {
+    private final LocalDateTime resultDate;
+    private final int winTicketNum;
+    private final int ticketCount;
+    private final int winnerCount;
+    private final long prizeOre;
+    private final long rolloverInOre;
+    private final long rolloverOutOre;
+    private final byte[] seedCommitment;
+
+    public LotteryResult(LocalDateTime drawingDate, int winTicketNum, int ticketCount, int winnerCount,
+                         long prizeOre, long rolloverInOre, long rolloverOutOre, byte[] seedCommitment) {
+        this.resultDate = drawingDate;
+        this.winTicketNum = winTicketNum;
+        this.ticketCount = ticketCount;
+        this.winnerCount = winnerCount;
+        this.prizeOre = prizeOre;
+        this.rolloverInOre = rolloverInOre;
+        this.rolloverOutOre = rolloverOutOre;
+        this.seedCommitment = seedCommitment.clone();
+    }
+
+    public LocalDateTime getResultDate() {
+        return resultDate;
+    }
+
+    public int getWinTicketNum() {
+        return winTicketNum;
+    }
+
+    public int getTicketCount() {
+        return ticketCount;
+    }
+
+    public int getWinnerCount() {
+        return winnerCount;
+    }
+
+    // The prize of every winner in SEK.
+    public double getPrizePerWinner() {
+        return prizeOre / 100.0;
+    }
+
+    public long getPrizeOre() {
+        return prizeOre;
+    }
+
+    // Money rolled over into this drawing from earlier ones without winners.
+    public long getRolloverInOre() {
+        return rolloverInOre;
+    }
+
+    // Money rolled over to the next drawing.
+    public long getRolloverOutOre() {
+        return rolloverOutOre;
+    }
+
+    // The hash of the seed the winning number was drawn from.
+    public byte[] getSeedCommitment() {
+        return seedCommitment.clone();
+    }
+
+    public double getTotalPaid() {
+        return prizeOre * winnerCount / 100.0;
+    }
+
+    @Override
+    public String toString() {
+        return "Lottery History{" +
+                "Result Date=" + resultDate +
+                ", Winning Ticket Number=" + winTicketNum +
+                ", Tickets=" + ticketCount +
+                ", Prize Winners=" + winnerCount +
+                ", Prize Per Winner=" + getPrizePerWinner() +
+                ", Total Paid=" + getTotalPaid() +
+                ", Rolled Over In=" + rolloverInOre / 100.0 +
+                ", Rolled Over Out=" + rolloverOutOre / 100.0 +
+                ", Seed Commitment=" + HexFormat.of().formatHex(seedCommitment) +
+                '}';
+    }
+}
@@ -0,0 +1,832 @@
+package lottery;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class LotteryServer implements AutoCloseable {
+    public static final int PORT = 8080;
+    private static final int BULK_CHUNK_SIZE = 1024;
+    static final int MAX_WINNER_PAGE = 1000;
+    // The longest address SMTP allows; it also keeps every email within what writeUTF can store.
+    static final int MAX_EMAIL_LENGTH = 254;
+    static final String TOO_MANY_REQUESTS = "Error: Too many requests, please try again later.";
+    private ServerSocket serverSocket;
+    private ConnectionEngine connectionEngine;
+    private DrawScheduler drawScheduler;
+    private RestApi restApi;
+    private final int readTimeoutMillis = Integer.getInteger("lottery.readTimeoutMs", 10_000);
+
+    private final RegistrationStore comingReg;
+    private final ResultLedger resultLedger;
+    private final Path snapshotFile;
+    private final WriteAheadLog writeAheadLog;
+    // Changes hold the read lock while they are logged and applied; a snapshot
+    // takes the write lock so it sees exactly the changes up to the last record.
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private final DrawRandom drawRandom;
+    // Decides which slots are open and which are due; accelerated in load tests.
+    private final LotteryClock clock;
+    private final PoolLedger poolLedger;
+    // Null when the server runs standalone; otherwise this node only serves the slots it owns.
+    private final ClusterTopology topology;
+    private final RolloverOutbox rolloverOutbox;
+    private final Set<Integer> receivedRollovers = ConcurrentHashMap.newKeySet();
+    // Keeps rollovers from other nodes out of a running draw.
+    private final ReentrantLock drawLock = new ReentrantLock();
+    private final AdmissionControl admission = AdmissionControl.fromProperties();
+    private final NotifyMail notifyMail;
+    private final StructuredLog eventLog = new StructuredLog(System.out, 8192, Integer.getInteger("lottery.logSampleRate", 100));
+    private final HistoryCache historyCache = new HistoryCache(Long.getLong("lottery.historyCacheBytes", 32L << 20));
+    private final ServerMetrics metrics;
+
+    public LotteryServer() {
+        this(Paths.get(System.getProperty("lottery.dataDir", "data")), null, ClusterTopology.fromProperties(),
+                LotteryClock.fromProperties());
+    }
+
+    // Recovers the state kept in dataDir; nothing is served and no draws take place until start.
+    LotteryServer(Path dataDir) {
+        this(dataDir, null);
+    }
+
+    // Draws with the given secret, so runs with the same secret can be compared; null uses the one in dataDir.
+    LotteryServer(Path dataDir, DrawRandom drawRandom) {
+        this(dataDir, drawRandom, null, LotteryClock.system());
+    }
+
+    LotteryServer(Path dataDir, DrawRandom drawRandom, ClusterTopology topology, LotteryClock clock) {
+        this.topology = topology;
+        this.clock = clock;
+        if (topology == null) {
+            rolloverOutbox = null;
+            poolLedger = new PoolLedger();
+        } else {
+            rolloverOutbox = new RolloverOutbox(topology, readTimeoutMillis);
+            poolLedger = new PoolLedger(this::rollOver);
+        }
+        comingReg = new RegistrationStore();
+        notifyMail = new NotifyMail(dataDir.resolve("notify.spill"));
+        metrics = new ServerMetrics(comingReg, notifyMail, eventLog, historyCache);
+        snapshotFile = dataDir.resolve("state.snapshot");
+        try {
+            this.drawRandom = drawRandom != null ? drawRandom : DrawRandom.open(dataDir);
+            resultLedger = new ResultLedger(dataDir.resolve("results.ledger"));
+            recover(dataDir.resolve("wal"));
+            writeAheadLog = new WriteAheadLog(dataDir.resolve("wal"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot recover the server state", e);
+        }
+    }
+
+    public void start() {
+        connectionEngine = ConnectionEngine.create(System.getProperty("lottery.engine", "pool"),
+                Integer.getInteger("lottery.workers", 64),
+                Integer.getInteger("lottery.maxConnections", 4096));
+        try {
+            // A cluster node listens on its own address from the node list.
+            int port = topology == null ? PORT : topology.node(topology.self()).getPort();
+            serverSocket = new ServerSocket(port, Integer.getInteger("lottery.backlog", 1024));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        System.out.println("Lottery Server is ready..");
+        if (topology != null) {
+            rolloverOutbox.start();
+            System.out.println("Serving as node " + topology.self() + " of a cluster of " + topology.size());
+        }
+        metrics.registerMBean();
+
+        drawScheduler = new DrawScheduler(this::makeDraw, clock);
+        drawScheduler.start();
+
+        int httpPort = Integer.getInteger("lottery.httpPort", 8081);
+        if (httpPort > 0) {
+            try {
+                restApi = new RestApi(this, httpPort, Integer.getInteger("lottery.backlog", 1024));
+                restApi.start();
+                System.out.println("REST API is listening on port " + httpPort);
+            } catch (IOException e) {
+                System.err.println("Cannot start the REST API: " + e.getMessage());
+            }
+        }
+
+        long snapshotMinutes = Long.getLong("lottery.snapshotMinutes", 15);
+        ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "state-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.scheduleWithFixedDelay(this::takeSnapshot, snapshotMinutes, snapshotMinutes, TimeUnit.MINUTES);
+
+        while (!Thread.interrupted()) {
+            try {
+                Socket client = serverSocket.accept();
+                client.setSoTimeout(readTimeoutMillis);
+                if (!connectionEngine.submit(new ClientHandler(client))) {
+                    // Saturated: refuse the connection instead of queueing it without bound.
+                    metrics.connectionRefused();
+                    client.close();
+                }
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    break;
+                }
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        if (connectionEngine != null) {
+            connectionEngine.close();
+        }
+        if (drawScheduler != null) {
+            drawScheduler.close();
+        }
+        if (restApi != null) {
+            restApi.close();
+        }
+        if (rolloverOutbox != null) {
+            rolloverOutbox.close();
+        }
+        notifyMail.close();
+        eventLog.close();
+        writeAheadLog.close();
+        resultLedger.close();
+    }
+
+    private void recover(Path walDir) throws IOException {
+        long start = System.nanoTime();
+        StateSnapshot snapshot = StateSnapshot.read(snapshotFile);
+        long afterSeq = 0;
+        if (snapshot != null) {
+            afterSeq = snapshot.seq();
+            snapshot.pots().forEach(poolLedger::credit);
+            snapshot.registrations().forEach(comingReg::add);
+            receivedRollovers.addAll(snapshot.receivedRollovers());
+            snapshot.pendingRollovers().forEach(rolloverOutbox::send);
+        }
+        WriteAheadLog.replay(walDir, afterSeq, entry -> {
+            if (entry.type() == WriteAheadLog.REGISTRATION) {
+                applyReg(WriteAheadLog.readRegistrations(entry.payload()));
+            } else if (entry.type() == WriteAheadLog.DRAW) {
+                replayDraw(WriteAheadLog.DrawRecord.fromPayload(entry.payload()));
+            } else if (entry.type() == WriteAheadLog.ROLLOVER) {
+                WriteAheadLog.RolloverRecord rollover = WriteAheadLog.RolloverRecord.fromPayload(entry.payload());
+                receivedRollovers.add(rollover.originHour());
+                poolLedger.credit(rollover.target(), rollover.ore());
+            }
+        });
+        System.out.println("Recovered server state in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    private void replayDraw(WriteAheadLog.DrawRecord draw) throws IOException {
+        RegistrationStore.ClosedSlot registrations = comingReg.close(draw.slot());
+        List<UserRegistration> winners = registrations.withNumber(draw.winningNumber());
+        PoolLedger.Settlement settlement = poolLedger.settle(draw.slot(), winners.size());
+        if (!resultLedger.contains(draw.slot())) {
+            resultLedger.append(summarize(draw.slot(), draw.winningNumber(), registrations.size(), winners.size(), settlement), winners);
+        }
+        comingReg.release(draw.slot());
+    }
+
+    private void takeSnapshot() {
+        StateSnapshot snapshot;
+        stateLock.writeLock().lock();
+        try {
+            snapshot = new StateSnapshot(writeAheadLog.lastSeq(), poolLedger.snapshot(), comingReg.copy(),
+                    new ArrayList<>(receivedRollovers), rolloverOutbox == null ? List.of() : rolloverOutbox.pending());
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        try {
+            snapshot.write(snapshotFile);
+            // Rotation deletes the DRAW records, so the results made from them must be on disk first.
+            resultLedger.sync();
+            writeAheadLog.rotate(snapshot.seq());
+        } catch (IOException e) {
+            System.err.println("Error writing state snapshot: " + e.getMessage());
+        }
+    }
+
+    // Rollover target in cluster mode: the next hour may be owned by another node.
+    private void rollOver(LocalDateTime from, LocalDateTime to, long ore) {
+        if (topology.isLocal(to)) {
+            poolLedger.credit(to, ore);
+        } else {
+            rolloverOutbox.send(new WriteAheadLog.RolloverRecord(EpochHours.of(from), to, ore));
+        }
+    }
+
+    // Credits money rolled over by the node owning the previous hour, once per origin slot.
+    // Returns whether the credited slot is already due, so the caller can draw it right away.
+    boolean acceptRollover(WriteAheadLog.RolloverRecord rollover) throws IOException {
+        drawLock.lock();
+        try {
+            stateLock.readLock().lock();
+            try {
+                if (receivedRollovers.contains(rollover.originHour())) {
+                    return false;
+                }
+                // The slot may already be drawn, after a catch-up or while the sender could not
+                // reach this node; the money then goes to the next slot of this node still open.
+                // It never moves on to another node, where the origin could be seen twice.
+                LocalDateTime target = rollover.target();
+                while (!topology.isLocal(target) || resultLedger.contains(target)) {
+                    target = target.plusHours(1);
+                }
+                WriteAheadLog.RolloverRecord applied = new WriteAheadLog.RolloverRecord(rollover.originHour(), target, rollover.ore());
+                writeAheadLog.appendAndSync(WriteAheadLog.ROLLOVER, applied.toPayload());
+                receivedRollovers.add(applied.originHour());
+                poolLedger.credit(target, applied.ore());
+                return !target.isAfter(clock.now());
+            } finally {
+                stateLock.readLock().unlock();
+            }
+        } finally {
+            drawLock.unlock();
+        }
+    }
+
+    // Returns which registrations were added; the others were already stored or their slot was drawn.
+    boolean[] applyReg(List<UserRegistration> registrations) {
+        boolean[] added = new boolean[registrations.size()];
+        for (int i = 0; i < added.length; i++) {
+            // Credited under the slot lock, so a draw closing the slot never misses a ticket's money.
+            UserRegistration registration = registrations.get(i);
+            LocalDateTime slot = registration.getRegDate();
+            added[i] = comingReg.add(registration, () -> poolLedger.credit(slot, PoolLedger.TICKET_PRICE_ORE));
+        }
+        return added;
+    }
+
+    // Draws every due slot, including slots missed while the server was down.
+    void makeDraw() {
+        makeDraw(true);
+    }
+
+    // The parallel and the sequential path draw the numbers in the same slot order and
+    // settle the pots in the same order, so they record exactly the same results.
+    void makeDraw(boolean parallel) {
+        LocalDateTime now = clock.now();
+        long start = System.nanoTime();
+        drawLock.lock();
+        // Slots are closed and their draws logged under the write lock, so a registration is
+        // either logged and stored before the draw of its slot, or logged after it and rejected.
+        stateLock.writeLock().lock();
+        boolean writeLocked = true;
+        try {
+            // Closing a slot does not depend on other slots.
+            List<LocalDateTime> ticketSlots = comingReg.dueSlots(now);
+            Map<LocalDateTime, RegistrationStore.ClosedSlot> closed = new HashMap<>();
+            if (parallel && ticketSlots.size() > 1) {
+                ticketSlots.parallelStream().map(slot -> Map.entry(slot, comingReg.close(slot))).toList()
+                        .forEach(entry -> closed.put(entry.getKey(), entry.getValue()));
+            } else {
+                ticketSlots.forEach(slot -> closed.put(slot, comingReg.close(slot)));
+            }
+            // The pool rolls over from hour to hour, so numbers are drawn and pots settled
+            // one by one in slot order. This only needs the winner counts. A rollover into
+            // an hour without tickets makes that hour due as well.
+            List<Draw> draws = new ArrayList<>();
+            TreeSet<LocalDateTime> due = new TreeSet<>(ticketSlots);
+            due.addAll(poolLedger.dueSlots(now));
+            LocalDateTime slot;
+            while ((slot = due.pollFirst()) != null) {
+                RegistrationStore.ClosedSlot registrations = closed.remove(slot);
+                if (registrations == null) {
+                    registrations = comingReg.close(slot);
+                }
+                int winningNumber = drawRandom.number(slot);
+                PoolLedger.Settlement settlement = poolLedger.settle(slot, registrations.countOf(winningNumber));
+                draws.add(new Draw(slot, registrations, winningNumber, settlement));
+                due.addAll(poolLedger.dueSlots(now));
+            }
+            // All draw records share one group commit instead of one sync per slot.
+            List<CompletableFuture<Long>> logged = new ArrayList<>(draws.size());
+            for (Draw draw : draws) {
+                logged.add(writeAheadLog.append(WriteAheadLog.DRAW, new WriteAheadLog.DrawRecord(draw.dateTime(),
+                        draw.winningNumber(), draw.settlement().prizeOre(), draw.settlement().rolloverOre()).toPayload()));
+            }
+            stateLock.readLock().lock();
+            stateLock.writeLock().unlock();
+            writeLocked = false;
+            // Only the winners are materialized, per slot and in chunks for large slots.
+            List<List<UserRegistration>> winners = (parallel ? draws.parallelStream() : draws.stream())
+                    .map(draw -> draw.registrations().withNumber(draw.winningNumber(), parallel))
+                    .toList();
+            recordDraws(draws, logged, winners);
+            // The drawn slots are done with; later registrations for them stay rejected.
+            draws.forEach(draw -> comingReg.release(draw.dateTime()));
+        } finally {
+            if (writeLocked) {
+                stateLock.writeLock().unlock();
+            } else {
+                stateLock.readLock().unlock();
+            }
+            drawLock.unlock();
+        }
+        metrics.drawFinished(System.nanoTime() - start);
+    }
+
+    private record Draw(LocalDateTime dateTime, RegistrationStore.ClosedSlot registrations, int winningNumber,
+                        PoolLedger.Settlement settlement) {
+    }
+
+    // The fixed-size record of a draw kept in the history, whatever its number of winners.
+    private LotteryResult summarize(LocalDateTime slot, int winningNumber, int tickets, int winners,
+                                    PoolLedger.Settlement settlement) {
+        long rolloverIn = settlement.potOre() - tickets * PoolLedger.TICKET_PRICE_ORE;
+        return new LotteryResult(slot, winningNumber, tickets, winners, settlement.prizeOre(), rolloverIn,
+                settlement.rolloverOre(), drawRandom.commitment(slot));
+    }
+
+    private void recordDraws(List<Draw> draws, List<CompletableFuture<Long>> logged, List<List<UserRegistration>> winners) {
+        for (int i = 0; i < draws.size(); i++) {
+            Draw draw = draws.get(i);
+            double winnings = draw.settlement().prizeOre() / 100.0;
+            try {
+                logged.get(i).join();
+                resultLedger.append(summarize(draw.dateTime(), draw.winningNumber(), draw.registrations().size(),
+                        winners.get(i).size(), draw.settlement()), winners.get(i));
+                historyCache.invalidate(draw.dateTime());
+            } catch (CompletionException e) {
+                System.err.println("Error recording draw result: " + e.getCause().getMessage());
+            } catch (IOException e) {
+                System.err.println("Error recording draw result: " + e.getMessage());
+            }
+            eventLog.log("draw", "slot", draw.dateTime(), "number", draw.winningNumber(),
+                    "tickets", draw.registrations().size(), "winners", winners.get(i).size(),
+                    "prize_ore", draw.settlement().prizeOre(), "rollover_ore", draw.settlement().rolloverOre());
+            notifyMail.notifyWinners(winners.get(i), winnings);
+        }
+        try {
+            resultLedger.sync();
+        } catch (IOException e) {
+            System.err.println("Error syncing draw results: " + e.getMessage());
+        }
+    }
+
+    // Stores a request that passed checkReg. A ticket can still lose a race with an identical
+    // registration or with the draw of its slot, so the outcome of every ticket is returned.
+    byte[] processReg(List<UserRegistration> registrations) throws IOException {
+        byte[] statuses = new byte[registrations.size()];
+        int[] positions = new int[registrations.size()];
+        Arrays.setAll(positions, i -> i);
+        store(registrations, positions, statuses);
+        countOutcomes(registrations, statuses);
+        return statuses;
+    }
+
+    // "OK" if every ticket was stored, otherwise the first reason and how many were stored.
+    static String describeOutcome(byte[] statuses) {
+        int stored = 0;
+        byte rejected = WireCodec.ACCEPTED;
+        for (byte status : statuses) {
+            if (status == WireCodec.ACCEPTED) {
+                stored++;
+            } else if (rejected == WireCodec.ACCEPTED) {
+                rejected = status;
+            }
+        }
+        if (rejected == WireCodec.ACCEPTED) {
+            return "OK";
+        }
+        return WireCodec.describeStatus(rejected) + " (" + stored + " of " + statuses.length + " tickets were registered.)";
+    }
+
+    // Logs and applies checked registrations; the ticket at index i has its status at positions[i].
+    // The registrations are only applied, and confirmed, once they are durable.
+    private void store(List<UserRegistration> registrations, int[] positions, byte[] statuses) throws IOException {
+        stateLock.readLock().lock();
+        try {
+            // Slots are only closed under the write lock, so a slot open here stays open until applied
+            // and a ticket for a drawn slot is never logged.
+            List<UserRegistration> open = new ArrayList<>(registrations.size());
+            int[] openPositions = new int[registrations.size()];
+            for (int i = 0; i < registrations.size(); i++) {
+                if (comingReg.isClosed(registrations.get(i).getRegDate())) {
+                    statuses[positions[i]] = WireCodec.REJECTED_PAST;
+                } else {
+                    openPositions[open.size()] = positions[i];
+                    open.add(registrations.get(i));
+                }
+            }
+            if (open.isEmpty()) {
+                return;
+            }
+            writeAheadLog.appendAndSync(WriteAheadLog.REGISTRATION, WriteAheadLog.registrationPayload(open));
+            boolean[] added = applyReg(open);
+            for (int i = 0; i < added.length; i++) {
+                if (!added[i]) {
+                    // Lost a race with an identical registration.
+                    statuses[openPositions[i]] = WireCodec.REJECTED_DUPLICATE;
+                }
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    private void countOutcomes(List<UserRegistration> registrations, byte[] statuses) {
+        int accepted = 0;
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] == WireCodec.ACCEPTED) {
+                accepted++;
+                logRegistration(registrations.get(i));
+            } else {
+                metrics.rejected(statuses[i]);
+            }
+        }
+        metrics.registered(accepted);
+    }
+
+    // Logging every registration would cost more than storing it, so only a sample is logged.
+    private void logRegistration(UserRegistration registration) {
+        if (eventLog.sample()) {
+            eventLog.logSampled("registration", "slot", registration.getRegDate(), "number", registration.getRegNum(),
+                    "email", registration.getUserEmail());
+        }
+    }
+
+    ServerMetrics metrics() {
+        return metrics;
+    }
+
+    AdmissionControl admission() {
+        return admission;
+    }
+
+    String checkReg(List<UserRegistration> registrations) {
+        if (!admission.admitBatch(registrations.size())) {
+            metrics.rejected(WireCodec.REJECTED_TOO_LARGE);
+            return WireCodec.describeStatus(WireCodec.REJECTED_TOO_LARGE);
+        }
+        LocalDateTime now = clock.now();
+        for (UserRegistration registration : registrations) {
+            byte status = checkTicket(registration, now);
+            if (status != WireCodec.ACCEPTED) {
+                metrics.rejected(status);
+                return WireCodec.describeStatus(status);
+            }
+        }
+        Set<UserRegistration> unique = new HashSet<>();
+        for (UserRegistration registration : registrations) {
+            if (!unique.add(registration)) {
+                metrics.rejected(WireCodec.REJECTED_REPEATED);
+                return WireCodec.describeStatus(WireCodec.REJECTED_REPEATED);
+            }
+        }
+        Map<LocalDateTime, Integer> perSlot = new HashMap<>();
+        for (UserRegistration registration : registrations) {
+            if (slotFull(registration, perSlot)) {
+                metrics.rejected(WireCodec.REJECTED_SLOT_FULL);
+                return WireCodec.describeStatus(WireCodec.REJECTED_SLOT_FULL);
+            }
+        }
+        // Only valid requests take tokens, so a client is not throttled for its mistakes.
+        Map<String, Integer> perEmail = new HashMap<>();
+        for (UserRegistration registration : registrations) {
+            perEmail.merge(registration.getUserEmail(), 1, Integer::sum);
+        }
+        List<Map.Entry<String, Integer>> admitted = new ArrayList<>(perEmail.size());
+        for (Map.Entry<String, Integer> email : perEmail.entrySet()) {
+            if (!admission.admitTickets(email.getKey(), email.getValue())) {
+                admitted.forEach(taken -> admission.refundTickets(taken.getKey(), taken.getValue()));
+                metrics.rejected(WireCodec.REJECTED_RATE_LIMITED);
+                return WireCodec.describeStatus(WireCodec.REJECTED_RATE_LIMITED);
+            }
+            admitted.add(email);
+        }
+        return "OK";
+    }
+
+    // Counts the tickets a request adds to every slot, so one request cannot pass the cap alone.
+    // Concurrent requests may still pass it by what they have checked but not yet stored.
+    private boolean slotFull(UserRegistration registration, Map<LocalDateTime, Integer> perSlot) {
+        int inRequest = perSlot.merge(registration.getRegDate(), 1, Integer::sum);
+        if (admission.admitSlot(comingReg.slotSize(registration.getRegDate()) + inRequest - 1)) {
+            return false;
+        }
+        perSlot.merge(registration.getRegDate(), -1, Integer::sum);
+        return true;
+    }
+
+    private byte checkTicket(UserRegistration registration, LocalDateTime now) {
+        if (registration.getRegDate().isBefore(now)) {
+            return WireCodec.REJECTED_PAST;
+        }
+        if (!registration.getRegDate().truncatedTo(ChronoUnit.HOURS).equals(registration.getRegDate())) {
+            return WireCodec.REJECTED_NOT_ON_HOUR;
+        }
+        if (registration.getRegNum() < 0 || registration.getRegNum() > 255) {
+            return WireCodec.REJECTED_NUMBER;
+        }
+        if (registration.getUserEmail().length() > MAX_EMAIL_LENGTH) {
+            return WireCodec.REJECTED_EMAIL;
+        }
+        if (topology != null && !topology.isLocal(registration.getRegDate())) {
+            return WireCodec.REJECTED_NOT_OWNER;
+        }
+        if (comingReg.contains(registration)) {
+            return WireCodec.REJECTED_DUPLICATE;
+        }
+        return WireCodec.ACCEPTED;
+    }
+
+    // Validates and stores a bulk batch chunk by chunk, so a large batch is logged in a few
+    // records and a bad ticket only rejects itself. Returns the outcome of every ticket.
+    byte[] processBulkReg(List<UserRegistration> registrations) {
+        byte[] statuses = new byte[registrations.size()];
+        if (!admission.admitBatch(registrations.size())) {
+            Arrays.fill(statuses, WireCodec.REJECTED_TOO_LARGE);
+            metrics.rejected(WireCodec.REJECTED_TOO_LARGE);
+            return statuses;
+        }
+        Set<UserRegistration> unique = new HashSet<>();
+        LocalDateTime now = clock.now();
+        for (int from = 0; from < registrations.size(); from += BULK_CHUNK_SIZE) {
+            int to = Math.min(from + BULK_CHUNK_SIZE, registrations.size());
+            List<UserRegistration> accepted = new ArrayList<>(to - from);
+            int[] positions = new int[to - from];
+            Map<LocalDateTime, Integer> perSlot = new HashMap<>();
+            for (int i = from; i < to; i++) {
+                UserRegistration registration = registrations.get(i);
+                byte status = checkTicket(registration, now);
+                if (status == WireCodec.ACCEPTED && !unique.add(registration)) {
+                    status = WireCodec.REJECTED_REPEATED;
+                }
+                if (status == WireCodec.ACCEPTED && slotFull(registration, perSlot)) {
+                    status = WireCodec.REJECTED_SLOT_FULL;
+                }
+                if (status == WireCodec.ACCEPTED && !admission.admitTickets(registration.getUserEmail(), 1)) {
+                    status = WireCodec.REJECTED_RATE_LIMITED;
+                }
+                statuses[i] = status;
+                if (status == WireCodec.ACCEPTED) {
+                    positions[accepted.size()] = i;
+                    accepted.add(registration);
+                }
+            }
+            if (accepted.isEmpty()) {
+                continue;
+            }
+            try {
+                store(accepted, positions, statuses);
+            } catch (IOException e) {
+                System.err.println("Error logging bulk registration: " + e.getMessage());
+                for (int i = 0; i < accepted.size(); i++) {
+                    statuses[positions[i]] = WireCodec.REJECTED_NOT_STORED;
+                }
+            }
+        }
+        countOutcomes(registrations, statuses);
+        return statuses;
+    }
+
+    List<LotteryResult> getHisRec(LocalDateTime from, LocalDateTime to) {
+        return resultLedger.between(from, to);
+    }
+
+    // The results of a period encoded for the wire; repeated queries are served from the cache.
+    ByteBuffer encodedHistory(LocalDateTime from, LocalDateTime to) {
+        return historyCache.get(from, to, (fromHour, toHour) -> WireCodec.encodeResults(fromHour.isAfter(toHour)
+                ? List.of() : resultLedger.between(fromHour, toHour, WireCodec.MAX_RESULTS)));
+    }
+
+    // The first results of a period, read page by page while they are streamed.
+    Iterable<LotteryResult> historyView(LocalDateTime from, LocalDateTime to, int limit) {
+        return resultLedger.view(from, to, limit);
+    }
+
+    // Where a reply of the first results of a period has to go on, or null if they all fit.
+    LocalDateTime historyNext(LocalDateTime from, LocalDateTime to, int limit) {
+        return resultLedger.slotAt(from, to, limit);
+    }
+
+    // A page of the winners of a draw, or null if the slot has not been drawn.
+    ResultLedger.WinnerPage winners(LocalDateTime slot, int offset, int limit) throws IOException {
+        return resultLedger.winners(slot, Math.max(0, offset), Math.max(0, Math.min(limit, MAX_WINNER_PAGE)));
+    }
+
+    // What an auditor needs to check a draw. The seed is only revealed once the slot has been drawn.
+    record DrawAudit(LocalDateTime slot, byte[] commitment, byte[] seed, LotteryResult result) {
+    }
+
+    // Null for a slot drawn by another node of the cluster, which has its own secret.
+    DrawAudit audit(LocalDateTime slot) {
+        slot = slot.truncatedTo(ChronoUnit.HOURS);
+        if (topology != null && !topology.isLocal(slot)) {
+            return null;
+        }
+        List<LotteryResult> drawn = resultLedger.between(slot, slot);
+        if (drawn.isEmpty()) {
+            return new DrawAudit(slot, drawRandom.commitment(slot), null, null);
+        }
+        LotteryResult result = drawn.get(0);
+        byte[] seed = drawRandom.seed(slot);
+        // A draw made with another secret has no seed to reveal.
+        boolean committed = MessageDigest.isEqual(DrawRandom.commit(seed), result.getSeedCommitment());
+        return new DrawAudit(slot, result.getSeedCommitment(), committed ? seed : null, result);
+    }
+
+    private class ClientHandler implements Runnable {
+        private Socket clientSocket;
+
+        public ClientHandler(Socket socket) {
+            this.clientSocket = socket;
+        }
+
+        @Override
+        public void run() {
+            metrics.connectionOpened();
+            try (
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+                    OutputStream out = new BufferedOutputStream(clientSocket.getOutputStream())
+            ) {
+                // Bulk clients pipeline their batches, so after a bulk batch the connection
+                // stays open for the next frame; other requests get a single reply.
+                boolean keepOpen = true;
+                while (keepOpen) {
+                    WireCodec.Frame request = WireCodec.readFrame(in);
+                    long start = System.nanoTime();
+                    keepOpen = false;
+                    if (request.type() == WireCodec.ROLLOVER
+                            && (topology == null || !topology.isNode(clientSocket.getInetAddress()))) {
+                        // Only the nodes of the cluster may move money between pools.
+                        WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Unknown request type."));
+                    } else if (!admission.admitRequest(clientSocket.getInetAddress()) && !fromRouter()) {
+                        // Shed before decoding; a bulk client may go on after its batch failed.
+                        metrics.rejected(WireCodec.REJECTED_RATE_LIMITED);
+                        WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText(TOO_MANY_REQUESTS));
+                        keepOpen = request.type() == WireCodec.BULK_REGISTER;
+                    } else if (request.type() == WireCodec.REGISTER) {
+                        handleReg(request.payload(), out);
+                    } else if (request.type() == WireCodec.HISTORY) {
+                        handleHisDataReq(request.payload(), out);
+                    } else if (request.type() == WireCodec.WINNERS) {
+                        handleWinnersReq(request.payload(), out);
+                    } else if (request.type() == WireCodec.BULK_REGISTER) {
+                        handleBulkReg(request.payload(), out);
+                        keepOpen = true;
+                    } else if (request.type() == WireCodec.ROLLOVER) {
+                        handleRollover(request.payload(), out);
+                        keepOpen = true;
+                    } else {
+                        WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Unknown request type."));
+                    }
+                    out.flush();
+                    metrics.request(requestName(request.type()), System.nanoTime() - start);
+                }
+            } catch (EOFException e) {
+                // The client closed the connection between two frames.
+            } catch (IOException e) {
+                System.err.println("IO Exception in Client Handler: " + e.getMessage());
+            } catch (Exception e) {
+                System.err.println("Error in Client Handler: " + e.getMessage());
+            } finally {
+                metrics.connectionClosed();
+                try {
+                    clientSocket.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing socket: " + e.getMessage());
+                }
+            }
+        }
+
+        // A router sends the requests of all its clients and limits them by their own address,
+        // so it is exempt here. Only looked up once its address has run out of tokens.
+        private boolean fromRouter() {
+            return topology != null && topology.isRouter(clientSocket.getInetAddress());
+        }
+
+        private void handleReg(ByteBuffer payload, OutputStream out) throws IOException {
+            List<UserRegistration> registrations;
+            String response;
+
+            try {
+                registrations = WireCodec.decodeRegistrations(payload);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Invalid registration data received: " + e.getMessage());
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Invalid registration data received."));
+                return;
+            }
+
+            if (registrations == null || registrations.isEmpty()) {
+                response = "Error: No registration data provided.";
+            } else {
+                response = checkReg(registrations);
+            }
+
+            if (response.equals("OK")) {
+                try {
+                    response = describeOutcome(processReg(registrations));
+                } catch (IOException e) {
+                    System.err.println("Error logging registration: " + e.getMessage());
+                    response = "Error: Registration could not be stored.";
+                }
+            }
+
+            WireCodec.writeFrame(out, response.equals("OK") ? WireCodec.OK : WireCodec.ERROR, WireCodec.encodeText(response));
+        }
+
+        private static String requestName(byte type) {
+            return switch (type) {
+                case WireCodec.REGISTER -> "register";
+                case WireCodec.HISTORY -> "history";
+                case WireCodec.WINNERS -> "winners";
+                case WireCodec.BULK_REGISTER -> "bulk_register";
+                case WireCodec.ROLLOVER -> "rollover";
+                default -> "unknown";
+            };
+        }
+
+        private void handleRollover(ByteBuffer payload, OutputStream out) throws IOException {
+            boolean due;
+            try {
+                due = acceptRollover(WireCodec.decodeRollover(payload));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Cannot accept rollover: " + e.getMessage());
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Rollover could not be stored."));
+                return;
+            }
+            WireCodec.writeFrame(out, WireCodec.OK, WireCodec.encodeText("OK"));
+            out.flush();
+            if (due) {
+                makeDraw();
+            }
+        }
+
+        private void handleBulkReg(ByteBuffer payload, OutputStream out) throws IOException {
+            WireCodec.BulkRequest request;
+            try {
+                request = WireCodec.decodeBulkRegistrations(payload);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Invalid bulk registration data received: " + e.getMessage());
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Invalid registration data received."));
+                return;
+            }
+            byte[] statuses = processBulkReg(request.registrations());
+            WireCodec.writeFrame(out, WireCodec.BULK_RESULT, WireCodec.encodeBulkResult(request.batchId(), statuses));
+        }
+
+        private void handleWinnersReq(ByteBuffer payload, OutputStream out) throws IOException {
+            WireCodec.WinnersRequest request;
+            try {
+                request = WireCodec.decodeWinnersRequest(payload);
+            } catch (IOException e) {
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Invalid winners request."));
+                return;
+            }
+            ResultLedger.WinnerPage page = winners(request.slot(), request.offset(), request.limit());
+            if (page == null) {
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: There is no draw at that time."));
+            } else {
+                WireCodec.writeFrame(out, WireCodec.WINNER_PAGE, WireCodec.encodeWinnerPage(page));
+            }
+        }
+
+        private void handleHisDataReq(ByteBuffer payload, OutputStream out) throws IOException {
+            WireCodec.HistoryRequest request;
+            try {
+                request = WireCodec.decodeHistoryRequest(payload);
+            } catch (IOException e) {
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: Invalid history request."));
+                return;
+            }
+            LocalDateTime start = request.from();
+            LocalDateTime end = request.to();
+            if (!start.isAfter(end)) {
+                WireCodec.writeFrame(out, WireCodec.RESULTS, encodedHistory(start, end));
+            } else {
+                WireCodec.writeFrame(out, WireCodec.ERROR, WireCodec.encodeText("Error: The start point is after the end time point."));
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        LotteryServer server = new LotteryServer();
+        server.start();
+    }
+}
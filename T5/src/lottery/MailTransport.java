@@ -0,0 +1,19 @@
+package lottery;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Delivers notification emails. A transport receives the messages in batches,
+ * so an implementation can send a whole batch with one call to the mail server.
+ */
+public interface MailTransport {
+
+    /**
+     * Delivers a batch of messages.
+     *
+     * @param messages The messages to deliver.
+     * @throws IOException If the batch could not be delivered; it will be retried.
+     */
+    void send(List<NotifyMail.NotificationMessage> messages) throws IOException;
+}
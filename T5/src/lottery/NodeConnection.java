@@ -0,0 +1,77 @@
+package lottery;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * A connection from a router or a node to another cluster node, carrying one
+ * request at a time. The connection is opened on first use and reopened on the
+ * next request after a failure.
+ */
+public class NodeConnection implements AutoCloseable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 2_000;
+
+    private final InetSocketAddress address;
+    private final int readTimeoutMillis;
+    private Socket socket;
+    private OutputStream out;
+    private DataInputStream in;
+
+    /**
+     * Creates a connection without opening it.
+     *
+     * @param address           The node to connect to.
+     * @param readTimeoutMillis How long to wait for a reply.
+     */
+    public NodeConnection(InetSocketAddress address, int readTimeoutMillis) {
+        this.address = address;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Sends a request and waits for its reply. The node must keep the
+     * connection open after replying, as it does for bulk registrations;
+     * other requests are sent with keepOpen false.
+     *
+     * @param type     The message type.
+     * @param payload  The payload.
+     * @param keepOpen Whether the node keeps the connection open after this request.
+     * @return The reply.
+     * @throws IOException If the node cannot be reached or does not reply.
+     */
+    public synchronized WireCodec.Frame exchange(byte type, ByteBuffer payload, boolean keepOpen) throws IOException {
+        if (socket == null) {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(readTimeoutMillis);
+            out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+        try {
+            WireCodec.writeFrame(out, type, payload);
+            out.flush();
+            return WireCodec.readFrame(in);
+        } catch (IOException e) {
+            close();
+            throw e;
+        } finally {
+            if (!keepOpen) {
+                close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to release.
+            }
+            socket = null;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package lottery;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class sends the notification emails to the winners. Notifications are
+ * queued and delivered in batches by background workers, so a draw never waits
+ * for the mail transport. Notifications that do not fit in the queue are
+ * written to a spill file and delivered from there once the workers are idle,
+ * also after a restart.
+ */
+public class NotifyMail implements AutoCloseable {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 200;
+    private static final long IDLE_MILLIS = 100;
+
+    private final MailTransport transport;
+    private final int batchSize;
+    private final BlockingQueue<Notification> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean closed;
+
+    // Null when overflowing notifications are dropped.
+    private final Path spillFile;
+    private final Object spillLock = new Object();
+    // Where the next spilled notification is read, and how many read ones are still being delivered.
+    private long spillReadOffset;
+    private int spillInFlight;
+    private final AtomicLong spilledMessages = new AtomicLong();
+
+    private final AtomicLong pendingMessages = new AtomicLong();
+    private final LongAdder deliveredMessages = new LongAdder();
+    private final LongAdder failedMessages = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+    /**
+     * Creates a notifier that logs the emails through the SMTP stub.
+     */
+    public NotifyMail() {
+        this(null);
+    }
+
+    /**
+     * Creates a notifier that logs the emails through the SMTP stub and spills
+     * what does not fit in its queue to a file.
+     *
+     * @param spillFile The spill file, null to drop the overflow.
+     */
+    public NotifyMail(Path spillFile) {
+        this(new SmtpStubTransport("lottery@localhost"), 2, 1024, 100, spillFile);
+    }
+
+    /**
+     * Creates a notifier.
+     *
+     * @param transport     Delivers the emails.
+     * @param workerCount   The number of delivery threads.
+     * @param queueCapacity The number of draws whose notifications may wait for delivery.
+     * @param batchSize     The maximum number of messages per transport call.
+     */
+    public NotifyMail(MailTransport transport, int workerCount, int queueCapacity, int batchSize) {
+        this(transport, workerCount, queueCapacity, batchSize, null);
+    }
+
+    /**
+     * Creates a notifier.
+     *
+     * @param transport     Delivers the emails.
+     * @param workerCount   The number of delivery threads.
+     * @param queueCapacity The number of draws whose notifications may wait for delivery.
+     * @param batchSize     The maximum number of messages per transport call.
+     * @param spillFile     Keeps the notifications the queue has no room for, null to drop them.
+     */
+    public NotifyMail(MailTransport transport, int workerCount, int queueCapacity, int batchSize, Path spillFile) {
+        this.transport = transport;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.spillFile = spillFile;
+        if (spillFile != null) {
+            recoverSpill();
+        }
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::deliverLoop, "notify-mail-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Sends a notification email to the provided registration with details of winnings.
+     *
+     * @param userRegistration The registration information.
+     * @param prizeAmount      The amount of winnings.
+     */
+    public void notifyWinner(UserRegistration userRegistration, double prizeAmount) {
+        notifyWinners(List.of(userRegistration), prizeAmount);
+    }
+
+    /**
+     * Queues the notification emails for all winners of a draw. The call never
+     * waits for delivery; the winners of one draw take a single queue slot
+     * however many there are. When the queue is full they are spilled to disk.
+     *
+     * @param winners     The winning registrations.
+     * @param prizeAmount The amount of winnings of each winner.
+     * @return false if the notifications could be neither queued nor spilled.
+     */
+    public boolean notifyWinners(List<UserRegistration> winners, double prizeAmount) {
+        if (winners.isEmpty()) {
+            return true;
+        }
+        Notification notification = new Notification(List.copyOf(winners), prizeAmount, System.nanoTime());
+        pendingMessages.addAndGet(winners.size());
+        if (!closed && queue.offer(notification)) {
+            return true;
+        }
+        pendingMessages.addAndGet(-winners.size());
+        if (spill(notification)) {
+            return true;
+        }
+        failedMessages.add(winners.size());
+        System.err.println("Notification queue is full, " + winners.size() + " winners were not notified.");
+        return false;
+    }
+
+    /**
+     * Gets the number of messages waiting for delivery.
+     *
+     * @return The notification backlog.
+     */
+    public long getQueueDepth() {
+        return pendingMessages.get() + spilledMessages.get();
+    }
+
+    /**
+     * Gets the number of messages waiting in the spill file.
+     *
+     * @return The spilled message count.
+     */
+    public long getSpilledCount() {
+        return spilledMessages.get();
+    }
+
+    /**
+     * Gets the number of messages delivered so far.
+     *
+     * @return The delivered message count.
+     */
+    public long getDeliveredCount() {
+        return deliveredMessages.sum();
+    }
+
+    /**
+     * Gets the number of messages that could not be delivered.
+     *
+     * @return The failed message count.
+     */
+    public long getFailedCount() {
+        return failedMessages.sum();
+    }
+
+    /**
+     * Gets the average time from queueing a message to its delivery.
+     *
+     * @return The average delivery latency in milliseconds.
+     */
+    public double getAverageLatencyMillis() {
+        long delivered = deliveredMessages.sum();
+        return delivered == 0 ? 0 : (double) totalLatencyMillis.sum() / delivered;
+    }
+
+    /**
+     * Gets the longest time from queueing a message to its delivery.
+     *
+     * @return The maximum delivery latency in milliseconds.
+     */
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis.get();
+    }
+
+    /**
+     * Stops accepting notifications and waits for the queued ones to be delivered.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void deliverLoop() {
+        while (true) {
+            Notification notification;
+            try {
+                notification = closed ? queue.poll() : queue.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Woken up by close: drain what is left before stopping.
+                notification = queue.poll();
+            }
+            if (notification != null) {
+                deliver(notification);
+            } else if (closed) {
+                // Spilled notifications stay on disk for the next start.
+                return;
+            } else if ((notification = readSpilled()) != null) {
+                deliver(notification);
+                spilledDelivered();
+            }
+        }
+    }
+
+    private boolean spill(Notification notification) {
+        if (spillFile == null) {
+            return false;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0);
+            out.writeDouble(notification.prizeAmount);
+            out.writeInt(notification.winners.size());
+            for (UserRegistration winner : notification.winners) {
+                out.writeUTF(winner.getUserEmail());
+                out.writeInt(EpochHours.of(winner.getRegDate()));
+                out.writeByte(winner.getRegNum());
+            }
+        } catch (IOException e) {
+            // An email writeUTF cannot hold; the caller counts the notification as dropped.
+            System.err.println("Cannot spill notifications: " + e.getMessage());
+            return false;
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        record.putInt(0, record.capacity() - 4);
+        synchronized (spillLock) {
+            try (FileChannel channel = FileChannel.open(spillFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                System.err.println("Cannot spill notifications: " + e.getMessage());
+                return false;
+            }
+        }
+        spilledMessages.addAndGet(notification.winners.size());
+        return true;
+    }
+
+    // Takes the next spilled notification; the file is emptied once all of them are delivered.
+    private Notification readSpilled() {
+        if (spillFile == null || spilledMessages.get() == 0) {
+            return null;
+        }
+        synchronized (spillLock) {
+            try (FileChannel channel = FileChannel.open(spillFile, StandardOpenOption.READ)) {
+                if (spillReadOffset >= channel.size()) {
+                    return null;
+                }
+                ByteBuffer length = ByteBuffer.allocate(4);
+                channel.read(length, spillReadOffset);
+                ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+                while (record.hasRemaining()) {
+                    channel.read(record, spillReadOffset + 4 + record.position());
+                }
+                spillReadOffset += 4 + record.capacity();
+                spillInFlight++;
+                Notification notification = decodeSpilled(record.array());
+                spilledMessages.addAndGet(-notification.winners.size());
+                pendingMessages.addAndGet(notification.winners.size());
+                return notification;
+            } catch (IOException e) {
+                System.err.println("Cannot read spilled notifications: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private void spilledDelivered() {
+        synchronized (spillLock) {
+            spillInFlight--;
+            try {
+                if (spillInFlight == 0 && spillReadOffset >= Files.size(spillFile)) {
+                    Files.delete(spillFile);
+                    spillReadOffset = 0;
+                }
+            } catch (IOException e) {
+                System.err.println("Cannot clear the spill file: " + e.getMessage());
+            }
+        }
+    }
+
+    // Counts the notifications left by the last run and drops a record it was writing when it stopped.
+    private void recoverSpill() {
+        if (!Files.exists(spillFile)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long offset = 0;
+            long messages = 0;
+            ByteBuffer header = ByteBuffer.allocate(16);
+            while (channel.size() - offset >= header.capacity()) {
+                channel.read(header.clear(), offset);
+                int length = header.getInt(0);
+                if (length < 12 || offset + 4 + length > channel.size()) {
+                    break;
+                }
+                messages += header.getInt(12);
+                offset += 4 + length;
+            }
+            channel.truncate(offset);
+            spilledMessages.set(messages);
+        } catch (IOException e) {
+            System.err.println("Cannot read spilled notifications: " + e.getMessage());
+        }
+    }
+
+    private static Notification decodeSpilled(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        double prizeAmount = in.readDouble();
+        int count = in.readInt();
+        List<UserRegistration> winners = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            winners.add(new UserRegistration(in.readUTF(), EpochHours.toDateTime(in.readInt()), in.readUnsignedByte()));
+        }
+        return new Notification(winners, prizeAmount, System.nanoTime());
+    }
+
+    private void deliver(Notification notification) {
+        List<UserRegistration> winners = notification.winners;
+        for (int from = 0; from < winners.size(); from += batchSize) {
+            List<NotificationMessage> batch = new ArrayList<>(Math.min(batchSize, winners.size() - from));
+            for (UserRegistration winner : winners.subList(from, Math.min(from + batchSize, winners.size()))) {
+                batch.add(new NotificationMessage(winner, notification.prizeAmount));
+            }
+            boolean delivered = sendWithRetry(batch);
+            pendingMessages.addAndGet(-batch.size());
+            if (delivered) {
+                long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - notification.queuedAt);
+                deliveredMessages.add(batch.size());
+                totalLatencyMillis.add(latency * batch.size());
+                maxLatencyMillis.accumulateAndGet(latency, Math::max);
+            } else {
+                failedMessages.add(batch.size());
+            }
+        }
+    }
+
+    private boolean sendWithRetry(List<NotificationMessage> batch) {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                transport.send(batch);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Mail delivery attempt " + attempt + " failed: " + e.getMessage());
+            }
+            if (attempt < MAX_ATTEMPTS) {
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    // Closing: keep retrying without waiting so nothing queued is lost.
+                    Thread.currentThread().interrupt();
+                }
+                backoff *= 2;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The winners of one draw waiting for their notifications.
+     */
+    private record Notification(List<UserRegistration> winners, double prizeAmount, long queuedAt) {
+    }
+
+    /**
+     * Inner class representing the structure of the notification message.
+     */
+    static class NotificationMessage {
+        private final UserRegistration userRegistration;
+        private final double prizeAmount;
+
+        /**
+         * Constructs a notification message with the provided registration and winnings.
+         *
+         * @param userRegistration The registration information.
+         * @param prizeAmount      The amount of winnings.
+         */
+        NotificationMessage(UserRegistration userRegistration, double prizeAmount) {
+            this.userRegistration = userRegistration;
+            this.prizeAmount = prizeAmount;
+        }
+
+        /**
+         * Gets the registration that won.
+         *
+         * @return The winning registration.
+         */
+        UserRegistration getUserRegistration() {
+            return userRegistration;
+        }
+
+        /**
+         * Converts the notification message to a formatted string.
+         *
+         * @return The formatted notification message.
+         */
+        public String toString() {
+            return "Email to: " + userRegistration.getUserEmail() + '\n'
+                    + "Content: \n"
+                    + "Congratulations! You have won " + prizeAmount + " SEK \n"
+                    + "due to the draw on " + userRegistration.getRegDate() + '\n'
+                    + "with the winning number: " + userRegistration.getRegNum() + ".\n";
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package lottery;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the money pool of every drawing slot in ore. Each slot has its own
+ * striped counter, so concurrent registrations neither lose increments nor
+ * contend on one shared value. At draw time the pot of a slot is closed and
+ * whatever is not paid out rolls over to the pot of the next hour.
+ */
+public class PoolLedger {
+    public static final long TICKET_PRICE_ORE = 100 * 100;
+
+    private final ConcurrentSkipListMap<LocalDateTime, LongAdder> pots = new ConcurrentSkipListMap<>();
+    private final RolloverTarget rolloverTarget;
+
+    /**
+     * Receives the money rolled over from a drawn slot to the next hour.
+     */
+    public interface RolloverTarget {
+        /**
+         * Credits the money rolled over from a drawn slot.
+         *
+         * @param from The drawn slot.
+         * @param to   The next hour.
+         * @param ore  The amount in ore.
+         */
+        void rollOver(LocalDateTime from, LocalDateTime to, long ore);
+    }
+
+    /**
+     * Creates a ledger that rolls money over to its own pot of the next hour.
+     */
+    public PoolLedger() {
+        this(null);
+    }
+
+    /**
+     * Creates a ledger whose rollovers are credited elsewhere, for example on
+     * the cluster node that owns the next hour.
+     *
+     * @param rolloverTarget Receives the rollovers, or null to keep them in this ledger.
+     */
+    public PoolLedger(RolloverTarget rolloverTarget) {
+        this.rolloverTarget = rolloverTarget;
+    }
+
+    /**
+     * The outcome of closing the pot of a slot.
+     *
+     * @param potOre      The money in the pot, rollover included.
+     * @param prizeOre    The prize of every winner, or 0 without winners.
+     * @param rolloverOre The money moved on to the next hour.
+     */
+    public record Settlement(long potOre, long prizeOre, long rolloverOre) {
+    }
+
+    /**
+     * Adds money to the pot of a slot.
+     *
+     * @param slot The drawing slot.
+     * @param ore  The amount in ore.
+     */
+    public void credit(LocalDateTime slot, long ore) {
+        pots.computeIfAbsent(slot, k -> new LongAdder()).add(ore);
+    }
+
+    /**
+     * Closes the pot of a drawn slot. The pot is shared equally by the winners;
+     * without winners, or for the ore that cannot be shared equally, the money
+     * rolls over to the next hour. Must be called once per slot, after no more
+     * registrations can be credited to it.
+     *
+     * @param slot    The drawn slot.
+     * @param winners The number of winners.
+     * @return How the pot was settled.
+     */
+    public Settlement settle(LocalDateTime slot, int winners) {
+        LongAdder pot = pots.remove(slot);
+        long potOre = pot == null ? 0 : pot.sum();
+        long prizeOre = winners > 0 ? potOre / winners : 0;
+        long rolloverOre = potOre - prizeOre * winners;
+        if (rolloverOre > 0) {
+            if (rolloverTarget == null) {
+                credit(slot.plusHours(1), rolloverOre);
+            } else {
+                rolloverTarget.rollOver(slot, slot.plusHours(1), rolloverOre);
+            }
+        }
+        return new Settlement(potOre, prizeOre, rolloverOre);
+    }
+
+    /**
+     * Gets the slots with money in their pot that are due at the given time.
+     *
+     * @param now The current time.
+     * @return The due slots, in slot order.
+     */
+    public NavigableSet<LocalDateTime> dueSlots(LocalDateTime now) {
+        return pots.headMap(now, true).navigableKeySet();
+    }
+
+    /**
+     * Gets the current pot of every slot.
+     *
+     * @return The pots in ore by slot.
+     */
+    public Map<LocalDateTime, Long> snapshot() {
+        Map<LocalDateTime, Long> copy = new TreeMap<>();
+        pots.forEach((slot, pot) -> copy.put(slot, pot.sum()));
+        return copy;
+    }
+
+    /**
+     * Gets the money kept in all pots.
+     *
+     * @return The total in ore.
+     */
+    public long total() {
+        long total = 0;
+        for (LongAdder pot : pots.values()) {
+            total += pot.sum();
+        }
+        return total;
+    }
+}
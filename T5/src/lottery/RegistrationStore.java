@@ -0,0 +1,413 @@
+package lottery;
+
+import java.time.LocalDateTime;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Keeps the registrations for the coming drawings, grouped by drawing slot.
+ * Writers only lock the slot they register for, so registrations for different
+ * hours never contend with each other or with a draw of another slot.
+ * <p>
+ * Tickets are stored in primitive arrays rather than as objects: slots are
+ * keyed by epoch hour, emails are replaced by ids from a shared dictionary and
+ * the number is implied by the bucket a ticket sits in, so a ticket costs a few
+ * bytes. UserRegistration objects are only created for winners and copies.
+ */
+public class RegistrationStore {
+    private static final int NUMBERS = 256;
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private final EmailDictionary emails = new EmailDictionary();
+    private final ConcurrentSkipListMap<Integer, Slot> slots = new ConcurrentSkipListMap<>();
+    // Every hour up to this one is drawn and released; no registration is taken for it again.
+    private final AtomicInteger releasedThrough = new AtomicInteger(Integer.MIN_VALUE);
+
+    /**
+     * Adds a registration to its drawing slot.
+     *
+     * @param registration The registration to add, with a number from 0 to 255.
+     * @return false if the slot has already been drawn or the registration is
+     * already stored, true otherwise.
+     */
+    public boolean add(UserRegistration registration) {
+        return add(registration, null);
+    }
+
+    /**
+     * Adds a registration to its drawing slot and, if it is added, runs an
+     * action while the slot is still locked. A draw closing the slot therefore
+     * sees either both the registration and the action or neither.
+     *
+     * @param registration The registration to add, with a number from 0 to 255.
+     * @param onAdded      Runs when the registration is added, may be null.
+     * @return false if the slot has already been drawn or the registration is
+     * already stored, true otherwise.
+     */
+    public boolean add(UserRegistration registration, Runnable onAdded) {
+        int hour = EpochHours.of(registration.getRegDate());
+        Slot slot = slots.computeIfAbsent(hour, Slot::new);
+        // Checked after the lookup: a slot created after its hour was released is seen here.
+        if (hour <= releasedThrough.get()) {
+            slots.remove(hour, slot);
+            return false;
+        }
+        return slot.add(emails.idOf(registration.getUserEmail()), registration.getRegNum(), onAdded);
+    }
+
+    /**
+     * Checks whether a slot is closed for registrations.
+     *
+     * @param slotTime The drawing slot.
+     * @return true if the slot is drawn or being drawn.
+     */
+    public boolean isClosed(LocalDateTime slotTime) {
+        int hour = EpochHours.of(slotTime);
+        if (hour <= releasedThrough.get()) {
+            return true;
+        }
+        Slot slot = slots.get(hour);
+        return slot != null && slot.isClosed();
+    }
+
+    /**
+     * Checks whether the exact same registration is already stored.
+     *
+     * @param registration The registration to look for.
+     * @return true if the registration exists in its slot.
+     */
+    public boolean contains(UserRegistration registration) {
+        Slot slot = slots.get(EpochHours.of(registration.getRegDate()));
+        if (slot == null) {
+            return false;
+        }
+        int emailId = emails.find(registration.getUserEmail());
+        return emailId >= 0 && slot.contains(emailId, registration.getRegNum());
+    }
+
+    /**
+     * Gets the drawing slots that are due at the given time, in slot order.
+     *
+     * @param now The current time.
+     * @return The slots at or before the given time.
+     */
+    public List<LocalDateTime> dueSlots(LocalDateTime now) {
+        List<LocalDateTime> due = new ArrayList<>();
+        for (int hour : slots.headMap(EpochHours.of(now), true).keySet()) {
+            due.add(EpochHours.toDateTime(hour));
+        }
+        return due;
+    }
+
+    /**
+     * Gets the number of registrations of an open slot.
+     *
+     * @param slotTime The drawing slot.
+     * @return The registration count, 0 if the slot has none.
+     */
+    public int slotSize(LocalDateTime slotTime) {
+        Slot slot = slots.get(EpochHours.of(slotTime));
+        return slot == null ? 0 : slot.size();
+    }
+
+    /**
+     * Gets the number of registrations of every open slot.
+     *
+     * @return The registration counts by slot, in slot order.
+     */
+    public Map<LocalDateTime, Integer> slotSizes() {
+        Map<LocalDateTime, Integer> sizes = new TreeMap<>();
+        slots.forEach((hour, slot) -> sizes.put(EpochHours.toDateTime(hour), slot.size()));
+        return sizes;
+    }
+
+    /**
+     * Closes a slot for the draw. The closed slot stays in the store, so a
+     * registration racing with the close or coming after it is rejected rather
+     * than added to a drawn slot, until the draw is recorded and the slot is
+     * released.
+     *
+     * @param slotTime The drawing slot.
+     * @return The final contents of the slot.
+     */
+    public ClosedSlot close(LocalDateTime slotTime) {
+        return slots.computeIfAbsent(EpochHours.of(slotTime), Slot::new).close(emails);
+    }
+
+    /**
+     * Removes a drawn slot from the store. Its hour, and every hour before it,
+     * keeps rejecting registrations.
+     *
+     * @param slotTime The drawn slot.
+     */
+    public void release(LocalDateTime slotTime) {
+        int hour = EpochHours.of(slotTime);
+        releasedThrough.accumulateAndGet(hour, Math::max);
+        slots.remove(hour);
+    }
+
+    /**
+     * Takes a consistent copy of all open slots. The copy holds the compact
+     * tickets and creates the registrations one by one while it is iterated,
+     * so it can be written out without holding every registration in memory.
+     *
+     * @return An immutable copy of all registrations, in slot order.
+     */
+    public Collection<UserRegistration> copy() {
+        List<ClosedSlot> copies = new ArrayList<>();
+        int size = 0;
+        for (Slot slot : slots.values()) {
+            ClosedSlot copy = slot.copy(emails);
+            copies.add(copy);
+            size += copy.size();
+        }
+        int total = size;
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<UserRegistration> iterator() {
+                return copies.stream().flatMap(copy -> copy.registrations().stream()).iterator();
+            }
+
+            @Override
+            public int size() {
+                return total;
+            }
+        };
+    }
+
+    /**
+     * The registrations of a drawn slot, indexed by the guessed number.
+     */
+    public static final class ClosedSlot {
+        private final int hour;
+        private final Bucket[] buckets;
+        private final int size;
+        private final EmailDictionary emails;
+
+        private ClosedSlot(int hour, Bucket[] buckets, int size, EmailDictionary emails) {
+            this.hour = hour;
+            this.buckets = buckets;
+            this.size = size;
+            this.emails = emails;
+        }
+
+        /**
+         * Gets the number of registrations in the slot.
+         *
+         * @return The number of registrations.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Gets the number of registrations that guessed the given number.
+         *
+         * @param number The drawn number.
+         * @return The number of matching registrations.
+         */
+        public int countOf(int number) {
+            Bucket bucket = buckets[number];
+            return bucket == null ? 0 : bucket.size;
+        }
+
+        /**
+         * Gets the registrations that guessed the given number. A large bucket
+         * is materialized in parallel chunks; the order is the same either way.
+         *
+         * @param number The drawn number.
+         * @return The matching registrations, in registration order.
+         */
+        public List<UserRegistration> withNumber(int number) {
+            return withNumber(number, true);
+        }
+
+        /**
+         * Gets the registrations that guessed the given number.
+         *
+         * @param number   The drawn number.
+         * @param parallel Whether a large bucket may be materialized in parallel chunks.
+         * @return The matching registrations, in registration order.
+         */
+        public List<UserRegistration> withNumber(int number, boolean parallel) {
+            Bucket bucket = buckets[number];
+            if (bucket == null) {
+                return Collections.emptyList();
+            }
+            LocalDateTime slotTime = EpochHours.toDateTime(hour);
+            int[] emailIds = bucket.emailIds;
+            UserRegistration[] registrations = new UserRegistration[bucket.size];
+            IntFunction<UserRegistration> materialize = i -> new UserRegistration(emails.email(emailIds[i]), slotTime, number);
+            if (parallel && registrations.length >= PARALLEL_THRESHOLD) {
+                Arrays.parallelSetAll(registrations, materialize);
+            } else {
+                Arrays.setAll(registrations, materialize);
+            }
+            return Collections.unmodifiableList(Arrays.asList(registrations));
+        }
+
+        private List<UserRegistration> registrations() {
+            List<UserRegistration> registrations = new ArrayList<>(size);
+            for (int number = 0; number < NUMBERS; number++) {
+                registrations.addAll(withNumber(number));
+            }
+            return registrations;
+        }
+    }
+
+    /**
+     * The email ids of the tickets on one number, in registration order.
+     */
+    private static final class Bucket {
+        private int[] emailIds = new int[4];
+        private int size;
+
+        void add(int emailId) {
+            if (size == emailIds.length) {
+                emailIds = Arrays.copyOf(emailIds, size * 2);
+            }
+            emailIds[size++] = emailId;
+        }
+
+        Bucket copy() {
+            Bucket copy = new Bucket();
+            copy.emailIds = Arrays.copyOf(emailIds, size);
+            copy.size = size;
+            return copy;
+        }
+    }
+
+    /**
+     * The registrations of a single drawing slot, guarded by its own monitor.
+     * Registrations are kept in one bucket per number, so the winners of a draw
+     * are a single bucket, and a set of (email id, number) keys answers
+     * duplicate checks without scanning.
+     */
+    private static class Slot {
+        private final int hour;
+        private final Bucket[] buckets = new Bucket[NUMBERS];
+        private final LongHashSet tickets = new LongHashSet();
+        // Written under the slot lock, read without it by admission checks.
+        private volatile int size;
+        private boolean closed;
+
+        Slot(int hour) {
+            this.hour = hour;
+        }
+
+        synchronized boolean add(int emailId, int number, Runnable onAdded) {
+            if (closed || !tickets.add(ticketKey(emailId, number))) {
+                return false;
+            }
+            if (buckets[number] == null) {
+                buckets[number] = new Bucket();
+            }
+            buckets[number].add(emailId);
+            size++;
+            if (onAdded != null) {
+                onAdded.run();
+            }
+            return true;
+        }
+
+        int size() {
+            return size;
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        synchronized boolean contains(int emailId, int number) {
+            return tickets.contains(ticketKey(emailId, number));
+        }
+
+        synchronized ClosedSlot copy(EmailDictionary emails) {
+            Bucket[] copy = new Bucket[NUMBERS];
+            for (int number = 0; number < NUMBERS; number++) {
+                if (buckets[number] != null) {
+                    copy[number] = buckets[number].copy();
+                }
+            }
+            return new ClosedSlot(hour, copy, size, emails);
+        }
+
+        synchronized ClosedSlot close(EmailDictionary emails) {
+            closed = true;
+            // No writer touches the buckets after closing, so they are handed over as they are.
+            return new ClosedSlot(hour, buckets, size, emails);
+        }
+
+        private static long ticketKey(int emailId, int number) {
+            return ((long) emailId << 8) | number;
+        }
+    }
+
+    /**
+     * An open addressing set of non-negative longs, without boxing.
+     */
+    private static final class LongHashSet {
+        // Keys are stored plus one, so 0 marks a free cell.
+        private long[] cells = new long[16];
+        private int size;
+
+        boolean add(long key) {
+            if ((size + 1) * 2 > cells.length) {
+                grow();
+            }
+            if (!insert(cells, key + 1)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        boolean contains(long key) {
+            int mask = cells.length - 1;
+            for (int i = index(key + 1, mask); cells[i] != 0; i = (i + 1) & mask) {
+                if (cells[i] == key + 1) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void grow() {
+            long[] grown = new long[cells.length * 2];
+            for (long cell : cells) {
+                if (cell != 0) {
+                    insert(grown, cell);
+                }
+            }
+            cells = grown;
+        }
+
+        private static boolean insert(long[] table, long stored) {
+            int mask = table.length - 1;
+            int i = index(stored, mask);
+            while (table[i] != 0) {
+                if (table[i] == stored) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = stored;
+            return true;
+        }
+
+        private static int index(long stored, int mask) {
+            long h = stored * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package lottery;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * REST front end of the lottery server, served next to the raw socket protocol.
+ * <ul>
+ *     <li>{@code POST /registrations} takes a JSON array of
+ *     {@code {"email": ..., "slot": "2030-01-01T13:00", "number": 42}}.</li>
+ *     <li>{@code GET /draws?from=...&to=...} returns the drawing results of the
+ *     period as a JSON array, streamed in chunks as it is written. Like the
+ *     socket protocol it returns at most WireCodec.MAX_RESULTS results, the
+ *     earliest; the X-Next-From header then gives the slot to go on from.</li>
+ *     <li>{@code GET /draws/{slot}/audit} returns the seed commitment of a
+ *     drawing, and its seed once it has been drawn.</li>
+ *     <li>{@code GET /metrics} returns the server metrics in the Prometheus
+ *     text format.</li>
+ * </ul>
+ */
+public class RestApi implements AutoCloseable {
+    private static final int MAX_BODY_BYTES = 1 << 20;
+
+    private final LotteryServer server;
+    private final HttpServer http;
+    private final ExecutorService executor;
+
+    /**
+     * Binds the REST service. Requests are served on virtual threads where the
+     * runtime has them, and on a pool of platform threads otherwise.
+     *
+     * @param server  The lottery server the requests go to.
+     * @param port    The HTTP port.
+     * @param backlog The accept backlog.
+     * @throws IOException If the port cannot be bound.
+     */
+    public RestApi(LotteryServer server, int port, int backlog) throws IOException {
+        this.server = server;
+        this.http = HttpServer.create(new InetSocketAddress(port), backlog);
+        ExecutorService executor;
+        try {
+            executor = VirtualThreadEngine.newVirtualThreadExecutor();
+        } catch (UnsupportedOperationException e) {
+            executor = Executors.newFixedThreadPool(Integer.getInteger("lottery.workers", 64));
+        }
+        this.executor = executor;
+        http.setExecutor(executor);
+        http.createContext("/registrations", this::handleRegistrations);
+        http.createContext("/draws", this::handleDraws);
+        http.createContext("/metrics", this::handleMetrics);
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    @Override
+    public void close() {
+        http.stop(1);
+        executor.shutdown();
+    }
+
+    private void handleRegistrations(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendJson(exchange, 405, error("Method not allowed."));
+                return;
+            }
+            if (throttled(exchange)) {
+                return;
+            }
+            List<UserRegistration> registrations;
+            try {
+                registrations = parseRegistrations(readBody(exchange));
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, 400, error("Invalid registration data: " + e.getMessage()));
+                return;
+            }
+            if (registrations.isEmpty()) {
+                sendJson(exchange, 400, error("No registration data provided."));
+                return;
+            }
+            String response = server.checkReg(registrations);
+            if (!response.equals("OK")) {
+                int status = 400;
+                if (response.equals(WireCodec.describeStatus(WireCodec.REJECTED_RATE_LIMITED))) {
+                    status = 429;
+                } else if (response.equals(WireCodec.describeStatus(WireCodec.REJECTED_TOO_LARGE))) {
+                    status = 413;
+                }
+                sendJson(exchange, status, error(response));
+                return;
+            }
+            byte[] statuses;
+            try {
+                statuses = server.processReg(registrations);
+            } catch (IOException e) {
+                System.err.println("Error logging registration: " + e.getMessage());
+                sendJson(exchange, 503, error("Registration could not be stored."));
+                return;
+            }
+            int registered = 0;
+            for (byte ticket : statuses) {
+                if (ticket == WireCodec.ACCEPTED) {
+                    registered++;
+                }
+            }
+            if (registered < statuses.length) {
+                // Some tickets lost a race with an identical registration or with their draw.
+                sendJson(exchange, 409, "{\"error\": " + Json.quote(LotteryServer.describeOutcome(statuses))
+                        + ", \"registered\": " + registered + "}");
+                return;
+            }
+            sendJson(exchange, 201, "{\"status\": \"OK\", \"registered\": " + registered + "}");
+        } finally {
+            server.metrics().request("rest_registrations", System.nanoTime() - start);
+        }
+    }
+
+    private void handleDraws(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.startsWith("/draws/") && path.endsWith("/audit")) {
+            handleAudit(exchange, path.substring("/draws/".length(), path.length() - "/audit".length()));
+            return;
+        }
+        if (path.startsWith("/draws/") && path.length() > "/draws/".length()) {
+            handleWinners(exchange, path.substring("/draws/".length()));
+            return;
+        }
+        long start = System.nanoTime();
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendJson(exchange, 405, error("Method not allowed."));
+                return;
+            }
+            if (throttled(exchange)) {
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            LocalDateTime from;
+            LocalDateTime to;
+            try {
+                from = LocalDateTime.parse(query.getOrDefault("from", ""));
+                to = LocalDateTime.parse(query.getOrDefault("to", ""));
+            } catch (DateTimeParseException e) {
+                sendJson(exchange, 400, error("The from and to parameters must be ISO dates like 2030-01-01T13:00."));
+                return;
+            }
+            if (from.isAfter(to)) {
+                sendJson(exchange, 400, error("The start point is after the end time point."));
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            LocalDateTime next = server.historyNext(from, to, WireCodec.MAX_RESULTS);
+            if (next != null) {
+                exchange.getResponseHeaders().set("X-Next-From", next.toString());
+            }
+            // Length 0 selects chunked encoding: results are written as they are read.
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192)) {
+                out.write('[');
+                String separator = "\n";
+                for (LotteryResult result : server.historyView(from, to, WireCodec.MAX_RESULTS)) {
+                    out.write(separator);
+                    out.write(toJson(result));
+                    separator = ",\n";
+                }
+                out.write("\n]\n");
+            }
+        } finally {
+            server.metrics().request("rest_draws", System.nanoTime() - start);
+        }
+    }
+
+    // GET /draws/{slot}/winners?offset=0&limit=100: one page of the winners of a draw.
+    private void handleWinners(HttpExchange exchange, String resource) throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendJson(exchange, 405, error("Method not allowed."));
+                return;
+            }
+            if (throttled(exchange)) {
+                return;
+            }
+            if (!resource.endsWith("/winners")) {
+                sendJson(exchange, 404, error("Not found."));
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            LocalDateTime slot;
+            int offset;
+            int limit;
+            try {
+                slot = LocalDateTime.parse(resource.substring(0, resource.length() - "/winners".length()));
+                offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+                limit = Integer.parseInt(query.getOrDefault("limit", "100"));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                sendJson(exchange, 400, error("Expected /draws/2030-01-01T13:00/winners with a numeric offset and limit."));
+                return;
+            }
+            ResultLedger.WinnerPage page = server.winners(slot, offset, limit);
+            if (page == null) {
+                sendJson(exchange, 404, error("There is no draw at that time."));
+                return;
+            }
+            StringBuilder json = new StringBuilder("{\"slot\": ").append(Json.quote(slot.toString()))
+                    .append(", \"total\": ").append(page.total())
+                    .append(", \"offset\": ").append(Math.max(0, offset))
+                    .append(", \"winners\": [");
+            for (int i = 0; i < page.emails().size(); i++) {
+                json.append(i == 0 ? "" : ", ").append(Json.quote(page.emails().get(i)));
+            }
+            sendJson(exchange, 200, json.append("]}").toString());
+        } finally {
+            server.metrics().request("rest_winners", System.nanoTime() - start);
+        }
+    }
+
+    // GET /draws/{slot}/audit: the seed commitment of a slot, and the seed once it has been drawn.
+    private void handleAudit(HttpExchange exchange, String resource) throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendJson(exchange, 405, error("Method not allowed."));
+                return;
+            }
+            if (throttled(exchange)) {
+                return;
+            }
+            LocalDateTime slot;
+            try {
+                slot = LocalDateTime.parse(resource);
+            } catch (DateTimeParseException e) {
+                sendJson(exchange, 400, error("Expected /draws/2030-01-01T13:00/audit."));
+                return;
+            }
+            LotteryServer.DrawAudit audit = server.audit(slot);
+            if (audit == null) {
+                sendJson(exchange, 404, error("That drawing is held by another node."));
+                return;
+            }
+            StringBuilder json = new StringBuilder("{\"slot\": ").append(Json.quote(audit.slot().toString()))
+                    .append(", \"commitment\": ").append(Json.quote(DrawRandom.hex(audit.commitment())));
+            if (audit.result() != null) {
+                json.append(", \"winningNumber\": ").append(audit.result().getWinTicketNum());
+            }
+            if (audit.seed() != null) {
+                json.append(", \"seed\": ").append(Json.quote(DrawRandom.hex(audit.seed())))
+                        .append(", \"verified\": ").append(DrawRandom.verify(audit.seed(), audit.commitment(),
+                                audit.result().getWinTicketNum()));
+            }
+            sendJson(exchange, 200, json.append('}').toString());
+        } finally {
+            server.metrics().request("rest_audit", System.nanoTime() - start);
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendJson(exchange, 405, error("Method not allowed."));
+                return;
+            }
+            StringBuilder text = new StringBuilder(4096);
+            server.metrics().writePrometheus(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    // Answers 429 when the client's address sends too many requests.
+    private boolean throttled(HttpExchange exchange) throws IOException {
+        if (server.admission().admitRequest(exchange.getRemoteAddress().getAddress())) {
+            return false;
+        }
+        server.metrics().rejected(WireCodec.REJECTED_RATE_LIMITED);
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendJson(exchange, 429, error("Too many requests, please try again later."));
+        return true;
+    }
+
+    private static String toJson(LotteryResult result) {
+        return "{\"slot\": " + Json.quote(result.getResultDate().toString())
+                + ", \"winningNumber\": " + result.getWinTicketNum()
+                + ", \"tickets\": " + result.getTicketCount()
+                + ", \"winners\": " + result.getWinnerCount()
+                + ", \"prizePerWinner\": " + result.getPrizePerWinner()
+                + ", \"totalPaid\": " + result.getTotalPaid()
+                + ", \"rolloverIn\": " + result.getRolloverInOre() / 100.0
+                + ", \"rolloverOut\": " + result.getRolloverOutOre() / 100.0
+                + ", \"seedCommitment\": " + Json.quote(DrawRandom.hex(result.getSeedCommitment())) + "}";
+    }
+
+    private static List<UserRegistration> parseRegistrations(String body) {
+        if (!(Json.parse(body) instanceof List<?> items)) {
+            throw new IllegalArgumentException("expected a JSON array");
+        }
+        List<UserRegistration> registrations = new ArrayList<>(items.size());
+        for (Object item : items) {
+            if (!(item instanceof Map<?, ?> fields)
+                    || !(fields.get("email") instanceof String email)
+                    || !(fields.get("slot") instanceof String slot)
+                    || !(fields.get("number") instanceof Double number)) {
+                throw new IllegalArgumentException("every registration needs an email, a slot and a number");
+            }
+            if (number != Math.rint(number)) {
+                throw new IllegalArgumentException("numbers must be integers");
+            }
+            try {
+                registrations.add(new UserRegistration(email, LocalDateTime.parse(slot), number.intValue()));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("invalid slot " + slot);
+            }
+        }
+        return registrations;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("request body too large");
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static String error(String message) {
+        return "{\"error\": " + Json.quote(message) + "}";
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+}
@@ -0,0 +1,295 @@
+package lottery;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only ledger of the drawing results. Every draw is appended to a file
+ * as a fixed-size summary followed by its winners. Only the summaries are kept
+ * in memory, in a DrawSeries, so a period query costs the same per draw however
+ * many winners it had; the winners are read back from the file a page at a time.
+ */
+public class ResultLedger implements Closeable {
+    // Starts every ledger file.
+    private static final int MAGIC = 0x4C524C33;
+    // Slot, number, tickets, winners, prize, rollover in and out, seed commitment and the size of the winner block.
+    private static final int SUMMARY_BYTES = 41 + DrawRandom.COMMITMENT_BYTES;
+    // The results copied at once by a view.
+    private static final int VIEW_PAGE = 512;
+
+    private final DrawSeries series = new DrawSeries();
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private final FileChannel reader;
+    private long length;
+
+    /**
+     * One page of the winners of a draw.
+     *
+     * @param total  The number of winners of the draw.
+     * @param emails The emails of the winners on this page.
+     */
+    public record WinnerPage(int total, List<String> emails) {
+    }
+
+    /**
+     * Opens the ledger file, loading the draws it already holds.
+     *
+     * @param file The ledger file, created if missing.
+     * @throws IOException If the file cannot be read or opened for appending,
+     *                     or is not a ledger file.
+     */
+    public ResultLedger(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        long validLength = load(file);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Drop a record that was only partly written before a crash.
+        channel.truncate(validLength);
+        channel.position(validLength);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        if (validLength == 0) {
+            out.writeInt(MAGIC);
+            out.flush();
+            validLength = 4;
+        }
+        length = validLength;
+        reader = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    private long load(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < 4) {
+            return 0;
+        }
+        // Only the summaries are read; the winner blocks are skipped by their size.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int magic = readFully(channel, 0, 4).getInt();
+            if (magic != MAGIC) {
+                // Never guess at the format: appending to such a file would make it unreadable.
+                throw new IOException(file + " is not a result ledger, it starts with " + Integer.toHexString(magic));
+            }
+            long position = 4;
+            while (size - position >= SUMMARY_BYTES) {
+                ByteBuffer summary = readFully(channel, position, SUMMARY_BYTES);
+                LotteryResult result = readSummary(summary);
+                int winnerBytes = summary.getInt();
+                if (winnerBytes < 0 || winnerBytes > size - position - SUMMARY_BYTES) {
+                    break;
+                }
+                series.add(result, position);
+                position += SUMMARY_BYTES + winnerBytes;
+            }
+            if (position < size) {
+                System.err.println("Dropping incomplete ledger record at offset " + position);
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Appends the result of a draw to the ledger.
+     *
+     * @param result  The summary of the draw.
+     * @param winners The winning registrations.
+     * @throws IOException If the result cannot be written.
+     */
+    public synchronized void append(LotteryResult result, List<UserRegistration> winners) throws IOException {
+        byte[] record = encode(result, winners);
+        out.write(record);
+        out.flush();
+        series.add(result, length);
+        length += record.length;
+    }
+
+    /**
+     * Forces the appended results to disk, so the log records they were drawn from can be dropped.
+     *
+     * @throws IOException If the ledger cannot be synced.
+     */
+    public synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Checks whether the result of a drawing has been recorded.
+     *
+     * @param date The drawing slot.
+     * @return true if the ledger holds a result for the slot.
+     */
+    public boolean contains(LocalDateTime date) {
+        return series.contains(date);
+    }
+
+    /**
+     * Gets the summaries of the drawings within the given period, in drawing order.
+     *
+     * @param from The start of the period (inclusive).
+     * @param to   The end of the period (inclusive).
+     * @return The results within the period.
+     */
+    public List<LotteryResult> between(LocalDateTime from, LocalDateTime to) {
+        return series.between(from, to);
+    }
+
+    /**
+     * Gets the first summaries of the drawings within the given period, in drawing order.
+     *
+     * @param from  The start of the period (inclusive).
+     * @param to    The end of the period (inclusive).
+     * @param limit The maximum number of results.
+     * @return The results within the period.
+     */
+    public List<LotteryResult> between(LocalDateTime from, LocalDateTime to, int limit) {
+        return series.between(from, to, limit);
+    }
+
+    /**
+     * Finds the slot of a drawing by its place within the given period.
+     *
+     * @param from  The start of the period (inclusive).
+     * @param to    The end of the period (inclusive).
+     * @param index The number of drawings of the period before it.
+     * @return The drawing slot, or null if the period has no more drawings.
+     */
+    public LocalDateTime slotAt(LocalDateTime from, LocalDateTime to, int index) {
+        return series.slotAt(from, to, index);
+    }
+
+    /**
+     * Gets the first summaries of the drawings within the given period, read
+     * a page at a time while they are iterated. Only one page is copied at
+     * once, and each page under its own short lock, so a wide period is
+     * streamed without being held in memory or blocking new draws.
+     *
+     * @param from  The start of the period (inclusive).
+     * @param to    The end of the period (inclusive).
+     * @param limit The maximum number of results.
+     * @return The results within the period.
+     */
+    public Iterable<LotteryResult> view(LocalDateTime from, LocalDateTime to, int limit) {
+        return () -> new Iterator<>() {
+            private LocalDateTime next = from;
+            private int remaining = limit;
+            private Iterator<LotteryResult> page = Collections.emptyIterator();
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (!page.hasNext() && !exhausted && remaining > 0) {
+                    int pageSize = Math.min(VIEW_PAGE, remaining);
+                    List<LotteryResult> results = series.between(next, to, pageSize);
+                    exhausted = results.size() < pageSize;
+                    remaining -= results.size();
+                    if (!results.isEmpty()) {
+                        next = results.get(results.size() - 1).getResultDate().plusHours(1);
+                    }
+                    page = results.iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public LotteryResult next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    /**
+     * Reads a page of the winners of a drawing.
+     *
+     * @param date   The drawing slot.
+     * @param offset The number of winners to skip.
+     * @param limit  The maximum number of winners to return.
+     * @return The page, or null if the slot has not been drawn.
+     * @throws IOException If the winners cannot be read.
+     */
+    public WinnerPage winners(LocalDateTime date, int offset, int limit) throws IOException {
+        long position = series.positionOf(date);
+        if (position < 0) {
+            return null;
+        }
+        ByteBuffer summary = readFully(position, SUMMARY_BYTES);
+        int total = summary.getInt(9);
+        ByteBuffer block = readFully(position + SUMMARY_BYTES, summary.getInt(SUMMARY_BYTES - 4));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(block.array()));
+        List<String> emails = new ArrayList<>(Math.max(0, Math.min(limit, total - offset)));
+        for (int i = 0; i < total && emails.size() < limit; i++) {
+            String email = in.readUTF();
+            if (i >= offset) {
+                emails.add(email);
+            }
+        }
+        return new WinnerPage(total, emails);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+        reader.close();
+    }
+
+    private ByteBuffer readFully(long position, int size) throws IOException {
+        return readFully(reader, position, size);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Ledger record at " + position + " is cut short");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static byte[] encode(LotteryResult result, List<UserRegistration> winners) throws IOException {
+        ByteArrayOutputStream winnerBlock = new ByteArrayOutputStream();
+        DataOutputStream winnerOut = new DataOutputStream(winnerBlock);
+        for (UserRegistration winner : winners) {
+            winnerOut.writeUTF(winner.getUserEmail());
+        }
+        ByteArrayOutputStream record = new ByteArrayOutputStream(SUMMARY_BYTES + winnerBlock.size());
+        DataOutputStream recordOut = new DataOutputStream(record);
+        recordOut.writeInt(EpochHours.of(result.getResultDate()));
+        recordOut.writeByte(result.getWinTicketNum());
+        recordOut.writeInt(result.getTicketCount());
+        recordOut.writeInt(result.getWinnerCount());
+        recordOut.writeLong(result.getPrizeOre());
+        recordOut.writeLong(result.getRolloverInOre());
+        recordOut.writeLong(result.getRolloverOutOre());
+        recordOut.write(result.getSeedCommitment());
+        recordOut.writeInt(winnerBlock.size());
+        winnerBlock.writeTo(recordOut);
+        return record.toByteArray();
+    }
+
+    private static LotteryResult readSummary(ByteBuffer buffer) {
+        LocalDateTime slot = EpochHours.toDateTime(buffer.getInt());
+        int number = buffer.get() & 0xFF;
+        int tickets = buffer.getInt();
+        int winners = buffer.getInt();
+        long prizeOre = buffer.getLong();
+        long rolloverInOre = buffer.getLong();
+        long rolloverOutOre = buffer.getLong();
+        byte[] commitment = new byte[DrawRandom.COMMITMENT_BYTES];
+        buffer.get(commitment);
+        return new LotteryResult(slot, number, tickets, winners, prizeOre, rolloverInOre, rolloverOutOre, commitment);
+    }
+}
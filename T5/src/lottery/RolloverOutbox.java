@@ -0,0 +1,121 @@
+package lottery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Delivers pool rollovers to the cluster nodes owning the next slot. A draw
+ * never waits for another node: transfers are queued and sent by a background
+ * thread, retried until the owner acknowledges them. Transfers are identified
+ * by their origin slot and applied once by the receiver, so resending one
+ * after a failure or a restart is harmless.
+ */
+public class RolloverOutbox implements AutoCloseable {
+    private static final long INITIAL_BACKOFF_MILLIS = 200;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final ClusterTopology topology;
+    private final int readTimeoutMillis;
+    private final Map<Integer, WriteAheadLog.RolloverRecord> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<WriteAheadLog.RolloverRecord> queue = new LinkedBlockingQueue<>();
+    private final Map<Integer, NodeConnection> connections = new HashMap<>();
+    private Thread sender;
+    private volatile boolean closed;
+
+    /**
+     * Creates an outbox. Transfers may be queued right away; they are sent once
+     * the outbox is started.
+     *
+     * @param topology          The cluster.
+     * @param readTimeoutMillis How long to wait for an acknowledgement.
+     */
+    public RolloverOutbox(ClusterTopology topology, int readTimeoutMillis) {
+        this.topology = topology;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Starts sending the queued transfers.
+     */
+    public void start() {
+        sender = new Thread(this::sendLoop, "rollover-outbox");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Queues a transfer for delivery to the owner of its target slot.
+     *
+     * @param rollover The money to move.
+     */
+    public void send(WriteAheadLog.RolloverRecord rollover) {
+        if (pending.putIfAbsent(rollover.originHour(), rollover) == null) {
+            queue.add(rollover);
+        }
+    }
+
+    /**
+     * Gets the transfers not yet acknowledged, for the state snapshot.
+     *
+     * @return The pending transfers.
+     */
+    public Collection<WriteAheadLog.RolloverRecord> pending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (sender != null) {
+            sender.interrupt();
+        }
+        connections.values().forEach(NodeConnection::close);
+    }
+
+    private void sendLoop() {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        while (!closed) {
+            WriteAheadLog.RolloverRecord rollover;
+            try {
+                rollover = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (deliver(rollover)) {
+                pending.remove(rollover.originHour());
+                backoff = INITIAL_BACKOFF_MILLIS;
+                continue;
+            }
+            // Keep the transfer, and its place behind the others, until the owner is back.
+            queue.add(rollover);
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    private boolean deliver(WriteAheadLog.RolloverRecord rollover) {
+        int owner = topology.ownerOf(rollover.target());
+        NodeConnection connection = connections.computeIfAbsent(owner,
+                node -> new NodeConnection(topology.node(node), readTimeoutMillis));
+        try {
+            WireCodec.Frame reply = connection.exchange(WireCodec.ROLLOVER, WireCodec.encodeRollover(rollover), true);
+            if (reply.type() == WireCodec.OK) {
+                return true;
+            }
+            System.err.println("Rollover from hour " + rollover.originHour() + " refused: " + WireCodec.decodeText(reply.payload()));
+        } catch (IOException e) {
+            System.err.println("Cannot deliver rollover from hour " + rollover.originHour() + ": " + e.getMessage());
+        }
+        return false;
+    }
+}
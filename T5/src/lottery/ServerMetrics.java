@@ -0,0 +1,292 @@
+package lottery;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The runtime metrics of the server. Counters are striped and histograms have
+ * fixed buckets, so the hot paths only pay for an uncontended increment. The
+ * metrics are published over JMX and as Prometheus text.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+    // Metric label of every rejection status, indexed by the WireCodec code.
+    private static final String[] REJECT_REASONS = {null, "past", "not_on_hour", "number", "duplicate", "repeated", "not_stored", "not_owner",
+            "rate_limited", "slot_full", "too_large", "email"};
+
+    private final RegistrationStore registrations;
+    private final NotifyMail notifyMail;
+    private final StructuredLog log;
+    private final HistoryCache historyCache;
+
+    private final LongAdder registered = new LongAdder();
+    private final LongAdder[] rejected = new LongAdder[REJECT_REASONS.length];
+    private final Map<String, LatencyHistogram> requests = new ConcurrentHashMap<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder refusedConnections = new LongAdder();
+    private final LatencyHistogram draws = new LatencyHistogram();
+    private final AtomicLong lastDrawNanos = new AtomicLong();
+
+    /**
+     * Creates the metrics of a server.
+     *
+     * @param registrations The store whose pending tickets are reported.
+     * @param notifyMail    The notifier whose backlog is reported.
+     * @param log           The log whose dropped lines are reported.
+     * @param historyCache  The cache whose hit ratio is reported.
+     */
+    public ServerMetrics(RegistrationStore registrations, NotifyMail notifyMail, StructuredLog log, HistoryCache historyCache) {
+        this.registrations = registrations;
+        this.notifyMail = notifyMail;
+        this.log = log;
+        this.historyCache = historyCache;
+        for (int i = 1; i < rejected.length; i++) {
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server.
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("lottery:type=ServerMetrics"));
+        } catch (JMException e) {
+            System.err.println("Cannot register the metrics MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counts accepted registrations.
+     *
+     * @param count The number of tickets stored.
+     */
+    public void registered(int count) {
+        registered.add(count);
+    }
+
+    /**
+     * Counts a rejected ticket or request.
+     *
+     * @param status The rejection status, one of the WireCodec REJECTED codes.
+     */
+    public void rejected(byte status) {
+        if (status > 0 && status < rejected.length) {
+            rejected[status].increment();
+        }
+    }
+
+    /**
+     * Records the time taken by one request.
+     *
+     * @param type  The request type, used as metric label.
+     * @param nanos The duration in nanoseconds.
+     */
+    public void request(String type, long nanos) {
+        requests.computeIfAbsent(type, k -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Counts a socket connection being opened; connectionClosed undoes it.
+     */
+    public void connectionOpened() {
+        openConnections.incrementAndGet();
+    }
+
+    public void connectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
+    /**
+     * Counts a connection refused because the connection engine was saturated.
+     */
+    public void connectionRefused() {
+        refusedConnections.increment();
+    }
+
+    /**
+     * Records the duration of a draw run.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void drawFinished(long nanos) {
+        draws.record(nanos);
+        lastDrawNanos.set(nanos);
+    }
+
+    @Override
+    public long getRegistrationCount() {
+        return registered.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRejectionCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (int i = 1; i < rejected.length; i++) {
+            counts.put(REJECT_REASONS[i], rejected[i].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((type, histogram) -> counts.put(type, histogram.count()));
+        return counts;
+    }
+
+    @Override
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    @Override
+    public long getRefusedConnections() {
+        return refusedConnections.sum();
+    }
+
+    @Override
+    public long getPendingTickets() {
+        long pending = 0;
+        for (int size : registrations.slotSizes().values()) {
+            pending += size;
+        }
+        return pending;
+    }
+
+    @Override
+    public Map<String, Integer> getPendingTicketsBySlot() {
+        Map<String, Integer> sizes = new TreeMap<>();
+        registrations.slotSizes().forEach((slot, size) -> sizes.put(slot.toString(), size));
+        return sizes;
+    }
+
+    @Override
+    public long getDrawCount() {
+        return draws.count();
+    }
+
+    @Override
+    public double getLastDrawMillis() {
+        return lastDrawNanos.get() / 1e6;
+    }
+
+    @Override
+    public long getNotificationBacklog() {
+        return notifyMail.getQueueDepth();
+    }
+
+    @Override
+    public long getNotificationsDelivered() {
+        return notifyMail.getDeliveredCount();
+    }
+
+    @Override
+    public long getNotificationsFailed() {
+        return notifyMail.getFailedCount();
+    }
+
+    @Override
+    public long getNotificationsSpilled() {
+        return notifyMail.getSpilledCount();
+    }
+
+    @Override
+    public long getLogLinesDropped() {
+        return log.getDroppedCount();
+    }
+
+    @Override
+    public double getHistoryCacheHitRatio() {
+        return historyCache.getHitRatio();
+    }
+
+    @Override
+    public long getHistoryCacheBytes() {
+        return historyCache.getSizeBytes();
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     *
+     * @param out Where the metrics are written.
+     * @throws IOException If the metrics cannot be written.
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        counter(out, "lottery_registrations_total", "Registrations accepted.", getRegistrationCount());
+
+        header(out, "lottery_registration_rejects_total", "Tickets or requests rejected, by reason.", "counter");
+        for (int i = 1; i < rejected.length; i++) {
+            out.append("lottery_registration_rejects_total{reason=\"").append(REJECT_REASONS[i]).append("\"} ")
+                    .append(String.valueOf(rejected[i].sum())).append('\n');
+        }
+
+        header(out, "lottery_request_duration_seconds", "Time to serve a request, by request type.", "histogram");
+        for (Map.Entry<String, LatencyHistogram> request : new TreeMap<>(requests).entrySet()) {
+            histogram(out, "lottery_request_duration_seconds", "type=\"" + request.getKey() + "\",", request.getValue());
+        }
+
+        gauge(out, "lottery_open_connections", "Socket connections being served.", getOpenConnections());
+        counter(out, "lottery_refused_connections_total", "Socket connections refused because all workers were busy.", getRefusedConnections());
+
+        header(out, "lottery_pending_tickets", "Registered tickets waiting for their draw, by slot.", "gauge");
+        for (Map.Entry<LocalDateTime, Integer> slot : registrations.slotSizes().entrySet()) {
+            out.append("lottery_pending_tickets{slot=\"").append(slot.getKey().toString()).append("\"} ")
+                    .append(String.valueOf(slot.getValue())).append('\n');
+        }
+
+        header(out, "lottery_draw_duration_seconds", "Time taken by a draw run.", "histogram");
+        histogram(out, "lottery_draw_duration_seconds", "", draws);
+
+        gauge(out, "lottery_notification_backlog", "Winner notifications waiting for delivery.", getNotificationBacklog());
+        counter(out, "lottery_notifications_delivered_total", "Winner notifications delivered.", getNotificationsDelivered());
+        counter(out, "lottery_notifications_failed_total", "Winner notifications given up on.", getNotificationsFailed());
+        gauge(out, "lottery_notifications_spilled", "Winner notifications waiting in the spill file.", getNotificationsSpilled());
+        counter(out, "lottery_log_lines_dropped_total", "Log lines dropped because the writer fell behind.", getLogLinesDropped());
+        counter(out, "lottery_history_cache_hits_total", "History queries served from the cache.", historyCache.getHitCount());
+        counter(out, "lottery_history_cache_misses_total", "History queries that read the ledger.", historyCache.getMissCount());
+        counter(out, "lottery_history_cache_evictions_total", "History replies evicted to bound the cache.", historyCache.getEvictionCount());
+        gauge(out, "lottery_history_cache_bytes", "Approximate size of the cached history replies.", getHistoryCacheBytes());
+        gauge(out, "lottery_history_cache_entries", "Cached history replies.", historyCache.getEntryCount());
+    }
+
+    private static void header(Appendable out, String name, String help, String type) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(Appendable out, String name, String help, long value) throws IOException {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(String.valueOf(value)).append('\n');
+    }
+
+    private static void gauge(Appendable out, String name, String help, long value) throws IOException {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(String.valueOf(value)).append('\n');
+    }
+
+    private static void histogram(Appendable out, String name, String labels, LatencyHistogram histogram) throws IOException {
+        long[] counts = histogram.counts();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String bound = i < LatencyHistogram.BOUNDS.length ? BigDecimal.valueOf(LatencyHistogram.BOUNDS[i]).stripTrailingZeros().toPlainString() : "+Inf";
+            out.append(name).append("_bucket{").append(labels).append("le=\"").append(bound).append("\"} ")
+                    .append(String.valueOf(cumulative)).append('\n');
+        }
+        String plainLabels = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        out.append(name).append("_sum").append(plainLabels).append(' ')
+                .append(String.format(Locale.ROOT, "%.6f", histogram.totalSeconds())).append('\n');
+        out.append(name).append("_count").append(plainLabels).append(' ').append(String.valueOf(cumulative)).append('\n');
+    }
+}
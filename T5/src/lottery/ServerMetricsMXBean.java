@@ -0,0 +1,40 @@
+package lottery;
+
+import java.util.Map;
+
+/**
+ * The server metrics as published over JMX, under lottery:type=ServerMetrics.
+ */
+public interface ServerMetricsMXBean {
+    long getRegistrationCount();
+
+    Map<String, Long> getRejectionCounts();
+
+    Map<String, Long> getRequestCounts();
+
+    int getOpenConnections();
+
+    long getRefusedConnections();
+
+    long getPendingTickets();
+
+    Map<String, Integer> getPendingTicketsBySlot();
+
+    long getDrawCount();
+
+    double getLastDrawMillis();
+
+    long getNotificationBacklog();
+
+    long getNotificationsDelivered();
+
+    long getNotificationsFailed();
+
+    long getNotificationsSpilled();
+
+    long getLogLinesDropped();
+
+    double getHistoryCacheHitRatio();
+
+    long getHistoryCacheBytes();
+}
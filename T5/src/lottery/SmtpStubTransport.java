@@ -0,0 +1,32 @@
+package lottery;
+
+import java.util.List;
+
+/**
+ * A local stand-in for an SMTP server. It does not connect anywhere; every
+ * message of a batch is logged on the console in the order an SMTP session
+ * would send it.
+ */
+public class SmtpStubTransport implements MailTransport {
+    private final String sender;
+
+    /**
+     * Creates the transport.
+     *
+     * @param sender The address the messages are sent from.
+     */
+    public SmtpStubTransport(String sender) {
+        this.sender = sender;
+    }
+
+    @Override
+    public void send(List<NotifyMail.NotificationMessage> messages) {
+        StringBuilder session = new StringBuilder();
+        for (NotifyMail.NotificationMessage message : messages) {
+            session.append("MAIL FROM:<").append(sender).append(">\n")
+                    .append("RCPT TO:<").append(message.getUserRegistration().getUserEmail()).append(">\n")
+                    .append(message).append('\n');
+        }
+        System.out.print(session);
+    }
+}
@@ -0,0 +1,108 @@
+package lottery;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compact point-in-time copy of the server state: the open registrations and
+ * the money pools, together with the last write-ahead log record it includes.
+ * Cluster nodes also keep the rollovers they received and the ones they still
+ * have to deliver; snapshots without that section read as empty.
+ *
+ * @param seq               The last log sequence number applied to this state.
+ * @param pots              The money pool of every slot in ore.
+ * @param registrations     The registrations for the coming drawings.
+ * @param receivedRollovers The origin hours of the rollovers received from other nodes.
+ * @param pendingRollovers  The rollovers not yet acknowledged by their owner.
+ */
+public record StateSnapshot(long seq, Map<LocalDateTime, Long> pots, Collection<UserRegistration> registrations,
+                            Collection<Integer> receivedRollovers,
+                            Collection<WriteAheadLog.RolloverRecord> pendingRollovers) {
+    private static final int MAGIC = 0x4C545354;
+
+    /**
+     * Writes the snapshot next to the target file and moves it in place, so a
+     * crash never leaves a half written snapshot behind.
+     *
+     * @param file The snapshot file.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeLong(seq);
+            out.writeInt(pots.size());
+            for (Map.Entry<LocalDateTime, Long> pot : pots.entrySet()) {
+                out.writeLong(pot.getKey().toEpochSecond(ZoneOffset.UTC));
+                out.writeLong(pot.getValue());
+            }
+            WriteAheadLog.writeRegistrations(out, registrations);
+            out.writeInt(receivedRollovers.size());
+            for (int originHour : receivedRollovers) {
+                out.writeInt(originHour);
+            }
+            out.writeInt(pendingRollovers.size());
+            for (WriteAheadLog.RolloverRecord rollover : pendingRollovers) {
+                out.write(rollover.toPayload());
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot file.
+     *
+     * @param file The snapshot file.
+     * @return The snapshot, or null if the file does not exist.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    public static StateSnapshot read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            long seq = in.readLong();
+            int potCount = in.readInt();
+            Map<LocalDateTime, Long> pots = new TreeMap<>();
+            for (int i = 0; i < potCount; i++) {
+                pots.put(LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC), in.readLong());
+            }
+            List<UserRegistration> registrations = WriteAheadLog.readRegistrations(in);
+            List<Integer> received = new ArrayList<>();
+            List<WriteAheadLog.RolloverRecord> pending = new ArrayList<>();
+            int receivedCount;
+            try {
+                receivedCount = in.readInt();
+            } catch (EOFException e) {
+                // Written before cluster mode: nothing received or pending.
+                return new StateSnapshot(seq, pots, registrations, received, pending);
+            }
+            for (int i = 0; i < receivedCount; i++) {
+                received.add(in.readInt());
+            }
+            int pendingCount = in.readInt();
+            for (int i = 0; i < pendingCount; i++) {
+                byte[] payload = new byte[16];
+                in.readFully(payload);
+                pending.add(WriteAheadLog.RolloverRecord.fromPayload(payload));
+            }
+            return new StateSnapshot(seq, pots, registrations, received, pending);
+        }
+    }
+}
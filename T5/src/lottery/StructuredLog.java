@@ -0,0 +1,165 @@
+package lottery;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes key=value log lines from a background thread, so logging never makes
+ * a request wait for the console. Frequent events are sampled, and when the
+ * writer falls behind lines are dropped and counted rather than queued
+ * without bound.
+ */
+public class StructuredLog implements AutoCloseable {
+    private final PrintStream out;
+    private final int sampleRate;
+    private final BlockingQueue<String> queue;
+    private final Thread writer;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Creates a log.
+     *
+     * @param out        Where the lines are written.
+     * @param capacity   The number of lines that may wait for the writer.
+     * @param sampleRate Sampled events are logged once in this many on average; 1 logs all.
+     */
+    public StructuredLog(PrintStream out, int capacity, int sampleRate) {
+        this.out = out;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::writeLoop, "structured-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Decides whether a sampled event is logged.
+     *
+     * @return true for about one call in sampleRate.
+     */
+    public boolean sample() {
+        return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    /**
+     * Logs an event. Never blocks.
+     *
+     * @param event  The event name.
+     * @param fields Pairs of field name and value.
+     */
+    public void log(String event, Object... fields) {
+        write(event, fields, false);
+    }
+
+    /**
+     * Logs an event that passed {@link #sample()}, tagged with the sample rate
+     * so counts can be scaled back up. Never blocks.
+     *
+     * @param event  The event name.
+     * @param fields Pairs of field name and value.
+     */
+    public void logSampled(String event, Object... fields) {
+        write(event, fields, sampleRate > 1);
+    }
+
+    private void write(String event, Object[] fields, boolean tagRate) {
+        StringBuilder line = new StringBuilder(64).append("ts=").append(Instant.now()).append(" event=").append(event);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            line.append(' ').append(fields[i]).append('=');
+            appendValue(line, String.valueOf(fields[i + 1]));
+        }
+        if (tagRate) {
+            line.append(" sample_rate=").append(sampleRate);
+        }
+        if (closed || !queue.offer(line.toString())) {
+            dropped.increment();
+        }
+    }
+
+    // Values come from clients, so line breaks are escaped to keep one event on one line.
+    private static void appendValue(StringBuilder line, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c <= ' ' || c == '"' || c == '\\' || c == 0x7f;
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < ' ' || c == 0x7f) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Gets the number of lines dropped because the writer fell behind.
+     *
+     * @return The dropped line count.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops accepting lines and writes the queued ones.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<String> lines = new ArrayList<>();
+        while (true) {
+            String line;
+            try {
+                line = closed ? queue.poll() : queue.take();
+            } catch (InterruptedException e) {
+                // Woken up by close: write what is left before stopping.
+                line = queue.poll();
+            }
+            if (line == null) {
+                out.flush();
+                return;
+            }
+            lines.add(line);
+            queue.drainTo(lines);
+            StringBuilder batch = new StringBuilder();
+            for (String queued : lines) {
+                batch.append(queued).append('\n');
+            }
+            out.print(batch);
+            lines.clear();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package lottery;
+
+import java.time.LocalDateTime;
+
+/**
+ * The wall clock of the system, in the default time zone.
+ */
+public final class SystemClock implements LotteryClock {
+    static final SystemClock INSTANCE = new SystemClock();
+
+    private SystemClock() {
+    }
+
+    @Override
+    public LocalDateTime now() {
+        return LocalDateTime.now();
+    }
+
+    @Override
+    public long toRealMillis(long clockMillis) {
+        return clockMillis;
+    }
+}
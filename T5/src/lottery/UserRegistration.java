@@ -1,3 +1,5 @@
+package lottery;
+
 import java.io.Serializable;
 import java.time.LocalDateTime;
 
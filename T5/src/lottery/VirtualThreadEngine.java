@@ -0,0 +1,70 @@
+package lottery;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Serves every connection on its own virtual thread. The number of connections
+ * in progress is still capped, so a flood of clients is refused instead of
+ * piling up sockets and buffers.
+ */
+public class VirtualThreadEngine implements ConnectionEngine {
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    /**
+     * Creates the engine.
+     *
+     * @param maxConnections The number of connections that may run at once.
+     * @throws UnsupportedOperationException If the runtime has no virtual threads.
+     */
+    public VirtualThreadEngine(int maxConnections) {
+        executor = newVirtualThreadExecutor();
+        permits = new Semaphore(maxConnections);
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor. It is looked up reflectively
+     * so the project still compiles and runs on runtimes without virtual threads.
+     *
+     * @return The executor.
+     * @throws UnsupportedOperationException If the runtime has no virtual threads.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available on Java "
+                    + Runtime.version().feature());
+        }
+    }
+
+    @Override
+    public boolean submit(Runnable connection) {
+        if (!permits.tryAcquire()) {
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    connection.run();
+                } finally {
+                    permits.release();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
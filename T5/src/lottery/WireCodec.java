@@ -0,0 +1,502 @@
+package lottery;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary protocol spoken between LotteryClient and LotteryServer. Every
+ * message is a frame of a version byte, a type byte, a payload length and the
+ * payload. Slots travel as epoch hours, numbers as one byte and emails as UTF-8.
+ */
+public final class WireCodec {
+    public static final byte VERSION = 1;
+
+    // Requests
+    public static final byte REGISTER = 1;
+    public static final byte HISTORY = 2;
+    public static final byte BULK_REGISTER = 3;
+    public static final byte WINNERS = 5;
+    // Between cluster nodes
+    public static final byte ROLLOVER = 4;
+
+    // Replies
+    public static final byte OK = 16;
+    public static final byte ERROR = 17;
+    public static final byte RESULTS = 18;
+    public static final byte BULK_RESULT = 19;
+    public static final byte WINNER_PAGE = 20;
+
+    // Outcome of every ticket of a bulk registration
+    public static final byte ACCEPTED = 0;
+    public static final byte REJECTED_PAST = 1;
+    public static final byte REJECTED_NOT_ON_HOUR = 2;
+    public static final byte REJECTED_NUMBER = 3;
+    public static final byte REJECTED_DUPLICATE = 4;
+    public static final byte REJECTED_REPEATED = 5;
+    public static final byte REJECTED_NOT_STORED = 6;
+    public static final byte REJECTED_NOT_OWNER = 7;
+    public static final byte REJECTED_RATE_LIMITED = 8;
+    public static final byte REJECTED_SLOT_FULL = 9;
+    public static final byte REJECTED_TOO_LARGE = 10;
+    public static final byte REJECTED_EMAIL = 11;
+
+    public static final int MAX_PAYLOAD = 1 << 20;
+    // Slot, number, tickets, winners, prize, rollover in and out, and the seed commitment.
+    private static final int RESULT_BYTES = 37 + DrawRandom.COMMITMENT_BYTES;
+    /** The most results one reply holds; a longer history is asked for in several periods. */
+    public static final int MAX_RESULTS = (MAX_PAYLOAD - 4) / RESULT_BYTES;
+    private static final int HEADER_SIZE = 6;
+
+    private WireCodec() {
+    }
+
+    /**
+     * A decoded frame.
+     *
+     * @param type    The message type.
+     * @param payload The message payload, positioned at its start.
+     */
+    public record Frame(byte type, ByteBuffer payload) {
+    }
+
+    /**
+     * A request for the results of a period.
+     *
+     * @param from The start of the period.
+     * @param to   The end of the period.
+     */
+    public record HistoryRequest(LocalDateTime from, LocalDateTime to) {
+    }
+
+    /**
+     * A request for a page of the winners of a draw.
+     *
+     * @param slot   The drawing slot.
+     * @param offset The number of winners to skip.
+     * @param limit  The maximum number of winners to return.
+     */
+    public record WinnersRequest(LocalDateTime slot, int offset, int limit) {
+    }
+
+    /**
+     * A batch of a bulk registration. Bulk requests are pipelined on one
+     * connection, and the batch id ties every reply to its request.
+     *
+     * @param batchId       The id chosen by the client.
+     * @param registrations The registrations of the batch.
+     */
+    public record BulkRequest(int batchId, List<UserRegistration> registrations) {
+    }
+
+    /**
+     * The reply to a bulk registration batch.
+     *
+     * @param batchId  The id of the batch.
+     * @param statuses The outcome of every ticket, in request order.
+     */
+    public record BulkResult(int batchId, byte[] statuses) {
+    }
+
+    /**
+     * Writes one frame. The caller flushes the stream.
+     *
+     * @param out     The stream to write to.
+     * @param type    The message type.
+     * @param payload The payload, from its position to its limit.
+     * @throws IOException If the frame cannot be written.
+     */
+    public static void writeFrame(OutputStream out, byte type, ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        byte[] header = {VERSION, type, (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length};
+        out.write(header);
+        out.write(payload.array(), payload.arrayOffset() + payload.position(), length);
+    }
+
+    /**
+     * Reads one frame.
+     *
+     * @param in The stream to read from.
+     * @return The frame.
+     * @throws IOException If the stream ends, or the frame has an unknown version or is too large.
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported protocol version " + version);
+        }
+        byte type = in.readByte();
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(type, ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Encodes a registration request.
+     *
+     * @param registrations The registrations.
+     * @return The payload.
+     */
+    public static ByteBuffer encodeRegistrations(List<UserRegistration> registrations) {
+        int size = 4;
+        for (UserRegistration registration : registrations) {
+            size += 5 + utf8Size(registration.getUserEmail());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(registrations.size());
+        for (UserRegistration registration : registrations) {
+            buffer.putInt(EpochHours.of(registration.getRegDate()));
+            buffer.put((byte) registration.getRegNum());
+            putUtf8(buffer, registration.getUserEmail());
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Decodes a registration request.
+     *
+     * @param payload The payload.
+     * @return The registrations.
+     * @throws IOException If the payload is malformed.
+     */
+    public static List<UserRegistration> decodeRegistrations(ByteBuffer payload) throws IOException {
+        int count = payload.getInt();
+        // Every registration takes at least 7 bytes, which bounds a forged count.
+        if (count < 0 || count > payload.remaining() / 7) {
+            throw new IOException("Invalid registration count " + count);
+        }
+        List<UserRegistration> registrations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDateTime slot = EpochHours.toDateTime(payload.getInt());
+            int number = payload.get() & 0xFF;
+            registrations.add(new UserRegistration(getUtf8(payload), slot, number));
+        }
+        return registrations;
+    }
+
+    /**
+     * Encodes a bulk registration batch.
+     *
+     * @param batchId       The id of the batch.
+     * @param registrations The registrations.
+     * @return The payload.
+     */
+    public static ByteBuffer encodeBulkRegistrations(int batchId, List<UserRegistration> registrations) {
+        ByteBuffer registrationPayload = encodeRegistrations(registrations);
+        return ByteBuffer.allocate(4 + registrationPayload.remaining()).putInt(batchId).put(registrationPayload).flip();
+    }
+
+    /**
+     * Decodes a bulk registration batch.
+     *
+     * @param payload The payload.
+     * @return The batch.
+     * @throws IOException If the payload is malformed.
+     */
+    public static BulkRequest decodeBulkRegistrations(ByteBuffer payload) throws IOException {
+        int batchId = payload.getInt();
+        return new BulkRequest(batchId, decodeRegistrations(payload));
+    }
+
+    /**
+     * Encodes the reply to a bulk registration batch.
+     *
+     * @param batchId  The id of the batch.
+     * @param statuses The outcome of every ticket.
+     * @return The payload.
+     */
+    public static ByteBuffer encodeBulkResult(int batchId, byte[] statuses) {
+        return ByteBuffer.allocate(8 + statuses.length).putInt(batchId).putInt(statuses.length).put(statuses).flip();
+    }
+
+    /**
+     * Decodes the reply to a bulk registration batch.
+     *
+     * @param payload The payload.
+     * @return The outcome of the batch.
+     * @throws IOException If the payload is malformed.
+     */
+    public static BulkResult decodeBulkResult(ByteBuffer payload) throws IOException {
+        int batchId = payload.getInt();
+        int count = payload.getInt();
+        if (count < 0 || count > payload.remaining()) {
+            throw new IOException("Invalid ticket count " + count);
+        }
+        byte[] statuses = new byte[count];
+        payload.get(statuses);
+        return new BulkResult(batchId, statuses);
+    }
+
+    /**
+     * Describes the outcome of a ticket.
+     *
+     * @param status The outcome, one of ACCEPTED or the REJECTED codes.
+     * @return The message shown to the user.
+     */
+    public static String describeStatus(byte status) {
+        return switch (status) {
+            case ACCEPTED -> "OK";
+            case REJECTED_PAST -> "Registration date is in the past.";
+            case REJECTED_NOT_ON_HOUR -> "Drawings take place on the hour.";
+            case REJECTED_NUMBER -> "Numbers must be between 0 and 255.";
+            case REJECTED_DUPLICATE -> "You have been registered before.";
+            case REJECTED_REPEATED -> "You can't repeat the same slot with the same number.";
+            case REJECTED_NOT_STORED -> "Registration could not be stored.";
+            case REJECTED_NOT_OWNER -> "This slot is served by another node.";
+            case REJECTED_RATE_LIMITED -> "Too many registrations for this email, please try again later.";
+            case REJECTED_SLOT_FULL -> "This drawing is sold out.";
+            case REJECTED_TOO_LARGE -> "Too many tickets in one request.";
+            case REJECTED_EMAIL -> "Email addresses can be at most " + LotteryServer.MAX_EMAIL_LENGTH + " characters.";
+            default -> "Unknown status " + status + ".";
+        };
+    }
+
+    /**
+     * Encodes a pool rollover sent to the node owning the next slot.
+     *
+     * @param rollover The money to credit.
+     * @return The payload.
+     */
+    public static ByteBuffer encodeRollover(WriteAheadLog.RolloverRecord rollover) {
+        return ByteBuffer.wrap(rollover.toPayload());
+    }
+
+    /**
+     * Decodes a pool rollover.
+     *
+     * @param payload The payload.
+     * @return The money to credit.
+     */
+    public static WriteAheadLog.RolloverRecord decodeRollover(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return WriteAheadLog.RolloverRecord.fromPayload(bytes);
+    }
+
+    /**
+     * Encodes a history request.
+     *
+     * @param from The start of the period.
+     * @param to   The end of the period.
+     * @return The payload.
+     */
+    public static ByteBuffer encodeHistoryRequest(LocalDateTime from, LocalDateTime to) {
+        return ByteBuffer.allocate(8).putInt(EpochHours.of(from)).putInt(EpochHours.of(to)).flip();
+    }
+
+    /**
+     * Decodes a history request.
+     *
+     * @param payload The payload.
+     * @return The requested period.
+     * @throws IOException If the payload is malformed.
+     */
+    public static HistoryRequest decodeHistoryRequest(ByteBuffer payload) throws IOException {
+        if (payload.remaining() != 8) {
+            throw new IOException("Invalid history request of " + payload.remaining() + " bytes");
+        }
+        return new HistoryRequest(EpochHours.toDateTime(payload.getInt()), EpochHours.toDateTime(payload.getInt()));
+    }
+
+    /**
+     * Encodes a text reply, used by OK and ERROR frames.
+     *
+     * @param text The message.
+     * @return The payload.
+     */
+    public static ByteBuffer encodeText(String text) {
+        ByteBuffer buffer = ByteBuffer.allocate(utf8Size(text));
+        putUtf8(buffer, text);
+        return buffer.flip();
+    }
+
+    /**
+     * Decodes a text reply.
+     *
+     * @param payload The payload.
+     * @return The message.
+     */
+    public static String decodeText(ByteBuffer payload) {
+        return getUtf8(payload);
+    }
+
+    /**
+     * Encodes the results of a history request. Every result is a summary of
+     * fixed size; the winners are asked for separately. Only the first
+     * MAX_RESULTS results fit in a frame, so a reply of that many results may
+     * be cut short: the rest follows the hour of its last result.
+     *
+     * @param results The drawing results, in drawing order.
+     * @return The payload.
+     */
+    public static ByteBuffer encodeResults(List<LotteryResult> results) {
+        if (results.size() > MAX_RESULTS) {
+            results = results.subList(0, MAX_RESULTS);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + results.size() * RESULT_BYTES);
+        buffer.putInt(results.size());
+        for (LotteryResult result : results) {
+            buffer.putInt(EpochHours.of(result.getResultDate()));
+            buffer.put((byte) result.getWinTicketNum());
+            buffer.putInt(result.getTicketCount());
+            buffer.putInt(result.getWinnerCount());
+            buffer.putLong(result.getPrizeOre());
+            buffer.putLong(result.getRolloverInOre());
+            buffer.putLong(result.getRolloverOutOre());
+            buffer.put(result.getSeedCommitment());
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Decodes the results of a history request.
+     *
+     * @param payload The payload.
+     * @return The drawing results.
+     * @throws IOException If the payload is malformed.
+     */
+    public static ArrayList<LotteryResult> decodeResults(ByteBuffer payload) throws IOException {
+        int count = payload.getInt();
+        if (count < 0 || count > payload.remaining() / RESULT_BYTES) {
+            throw new IOException("Invalid result count " + count);
+        }
+        ArrayList<LotteryResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDateTime slot = EpochHours.toDateTime(payload.getInt());
+            int winTicketNum = payload.get() & 0xFF;
+            int tickets = payload.getInt();
+            int winners = payload.getInt();
+            long prizeOre = payload.getLong();
+            long rolloverInOre = payload.getLong();
+            long rolloverOutOre = payload.getLong();
+            byte[] commitment = new byte[DrawRandom.COMMITMENT_BYTES];
+            payload.get(commitment);
+            results.add(new LotteryResult(slot, winTicketNum, tickets, winners, prizeOre, rolloverInOre, rolloverOutOre,
+                    commitment));
+        }
+        return results;
+    }
+
+    /**
+     * Encodes a request for a page of the winners of a draw.
+     *
+     * @param slot   The drawing slot.
+     * @param offset The number of winners to skip.
+     * @param limit  The maximum number of winners to return.
+     * @return The payload.
+     */
+    public static ByteBuffer encodeWinnersRequest(LocalDateTime slot, int offset, int limit) {
+        return ByteBuffer.allocate(12).putInt(EpochHours.of(slot)).putInt(offset).putInt(limit).flip();
+    }
+
+    /**
+     * Decodes a request for a page of winners.
+     *
+     * @param payload The payload.
+     * @return The requested page.
+     * @throws IOException If the payload is malformed.
+     */
+    public static WinnersRequest decodeWinnersRequest(ByteBuffer payload) throws IOException {
+        if (payload.remaining() != 12) {
+            throw new IOException("Invalid winners request of " + payload.remaining() + " bytes");
+        }
+        return new WinnersRequest(EpochHours.toDateTime(payload.getInt()), payload.getInt(), payload.getInt());
+    }
+
+    /**
+     * Encodes a page of winners.
+     *
+     * @param page The winners.
+     * @return The payload.
+     */
+    public static ByteBuffer encodeWinnerPage(ResultLedger.WinnerPage page) {
+        int size = 8;
+        for (String email : page.emails()) {
+            size += utf8Size(email);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(page.total()).putInt(page.emails().size());
+        for (String email : page.emails()) {
+            putUtf8(buffer, email);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Decodes a page of winners.
+     *
+     * @param payload The payload.
+     * @return The winners.
+     * @throws IOException If the payload is malformed.
+     */
+    public static ResultLedger.WinnerPage decodeWinnerPage(ByteBuffer payload) throws IOException {
+        int total = payload.getInt();
+        int count = payload.getInt();
+        if (count < 0 || count > payload.remaining() / 2) {
+            throw new IOException("Invalid winner count " + count);
+        }
+        List<String> emails = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            emails.add(getUtf8(payload));
+        }
+        return new ResultLedger.WinnerPage(total, emails);
+    }
+
+    // Strings are prefixed with their UTF-8 length as an unsigned short.
+    private static int utf8Size(String s) {
+        int size = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                size += 1;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    private static void putUtf8(ByteBuffer buffer, String s) {
+        int lengthAt = buffer.position();
+        buffer.putShort((short) 0);
+        int start = buffer.position();
+        boolean ascii = true;
+        for (int i = 0; i < s.length() && ascii; i++) {
+            ascii = s.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            // Common case for email addresses: no intermediate byte array.
+            for (int i = 0; i < s.length(); i++) {
+                buffer.put((byte) s.charAt(i));
+            }
+        } else {
+            buffer.put(s.getBytes(StandardCharsets.UTF_8));
+        }
+        int length = buffer.position() - start;
+        if (length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long for the wire format");
+        }
+        buffer.putShort(lengthAt, (short) length);
+    }
+
+    private static String getUtf8(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+}
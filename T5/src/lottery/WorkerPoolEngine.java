@@ -0,0 +1,45 @@
+package lottery;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves connections on a fixed pool of platform threads with a bounded queue
+ * in front of it, so a connection burst costs queue slots instead of threads.
+ */
+public class WorkerPoolEngine implements ConnectionEngine {
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates the worker pool.
+     *
+     * @param workers       The number of worker threads.
+     * @param queueCapacity The number of connections that may wait for a worker.
+     */
+    public WorkerPoolEngine(int workers, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>(),
+                r -> new Thread(r, "client-worker-" + count.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public boolean submit(Runnable connection) {
+        try {
+            executor.execute(connection);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
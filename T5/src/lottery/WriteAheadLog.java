@@ -0,0 +1,412 @@
+package lottery;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Durable log of the state changes of the server. Records are appended by a
+ * single writer thread that commits everything queued since its last write
+ * with one fsync, so a burst of registrations shares the cost of one sync.
+ * The log is split into segments named after their first sequence number;
+ * segments made obsolete by a snapshot are deleted when the log is rotated.
+ */
+public class WriteAheadLog implements Closeable {
+    public static final byte REGISTRATION = 1;
+    public static final byte DRAW = 2;
+    public static final byte ROLLOVER = 3;
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // seq (8) + type (1) + length (4) before the payload, crc (4) after it
+    private static final int HEADER_SIZE = 13;
+    private static final int TRAILER_SIZE = 4;
+    private static final int MAX_PAYLOAD = 64 << 20;
+
+    private final Path dir;
+    private final BlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private FileChannel channel;
+    private long nextSeq;
+    private volatile boolean closed;
+
+    /**
+     * A single log record.
+     *
+     * @param seq     The sequence number of the record.
+     * @param type    The record type.
+     * @param payload The record contents.
+     */
+    public record Entry(long seq, byte type, byte[] payload) {
+    }
+
+    private record PendingRecord(byte type, byte[] payload, CompletableFuture<Long> done) {
+    }
+
+    // Queued by close to stop the writer; interrupting it could close the channel in the middle of a write.
+    private static final PendingRecord CLOSE = new PendingRecord((byte) 0, new byte[0], new CompletableFuture<>());
+
+    /**
+     * Opens the log for appending after the last valid record on disk.
+     *
+     * @param dir The directory of the log segments.
+     * @throws IOException If the log cannot be opened.
+     */
+    public WriteAheadLog(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        List<Path> segments = segments(dir);
+        long lastSeq = 0;
+        if (segments.isEmpty()) {
+            channel = openSegment(1);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            ScanResult scan = scan(last, 0, null);
+            lastSeq = scan.lastSeq == 0 ? firstSeqOf(last) - 1 : scan.lastSeq;
+            channel = FileChannel.open(last, StandardOpenOption.WRITE);
+            // Drop a record that was only partly written before a crash.
+            channel.truncate(scan.validLength);
+            channel.position(scan.validLength);
+        }
+        nextSeq = lastSeq + 1;
+        writer = new Thread(this::writeLoop, "wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a record for the next group commit.
+     *
+     * @param type    The record type.
+     * @param payload The record contents.
+     * @return A future completed with the sequence number once the record is durable.
+     */
+    public CompletableFuture<Long> append(byte type, byte[] payload) {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        if (closed) {
+            done.completeExceptionally(new IOException("Write-ahead log is closed"));
+            return done;
+        }
+        PendingRecord record = new PendingRecord(type, payload, done);
+        queue.add(record);
+        // close may have failed the queued records between the check above and the add.
+        if (closed && queue.remove(record)) {
+            done.completeExceptionally(new IOException("Write-ahead log is closed"));
+        }
+        return done;
+    }
+
+    /**
+     * Appends a record and waits until it is durable.
+     *
+     * @param type    The record type.
+     * @param payload The record contents.
+     * @return The sequence number of the record.
+     * @throws IOException If the record could not be written.
+     */
+    public long appendAndSync(byte type, byte[] payload) throws IOException {
+        try {
+            return append(type, payload).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Gets the sequence number of the last record that was written.
+     *
+     * @return The last written sequence number.
+     */
+    public synchronized long lastSeq() {
+        return nextSeq - 1;
+    }
+
+    /**
+     * Starts a new segment and deletes the segments that only hold records up
+     * to the given sequence number.
+     *
+     * @param coveredSeq The sequence number included in the latest snapshot.
+     * @throws IOException If the new segment cannot be created.
+     */
+    public synchronized void rotate(long coveredSeq) throws IOException {
+        channel.force(false);
+        channel.close();
+        channel = openSegment(nextSeq);
+        List<Path> segments = segments(dir);
+        for (int i = 0; i < segments.size() - 1; i++) {
+            long lastInSegment = firstSeqOf(segments.get(i + 1)) - 1;
+            if (lastInSegment <= coveredSeq) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    /**
+     * Reads every record after the given sequence number, in log order.
+     *
+     * @param dir      The directory of the log segments.
+     * @param afterSeq The sequence number already covered by a snapshot.
+     * @param consumer Receives the records to replay.
+     * @throws IOException If the log cannot be read.
+     */
+    public static void replay(Path dir, long afterSeq, RecordConsumer consumer) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        for (Path segment : segments(dir)) {
+            scan(segment, afterSeq, consumer);
+        }
+    }
+
+    /**
+     * Receives the records read back from the log.
+     */
+    public interface RecordConsumer {
+        void accept(Entry entry) throws IOException;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        queue.add(CLOSE);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingRecord> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        for (PendingRecord record : abandoned) {
+            record.done.completeExceptionally(new IOException("Write-ahead log is closed"));
+        }
+        synchronized (this) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingRecord> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch);
+            stopping = batch.removeIf(record -> record == CLOSE);
+            if (!batch.isEmpty()) {
+                commit(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    private void commit(List<PendingRecord> batch) {
+        long[] seqs = new long[batch.size()];
+        try {
+            synchronized (this) {
+                int size = 0;
+                for (PendingRecord record : batch) {
+                    size += HEADER_SIZE + record.payload.length + TRAILER_SIZE;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                for (int i = 0; i < batch.size(); i++) {
+                    PendingRecord record = batch.get(i);
+                    seqs[i] = nextSeq++;
+                    int start = buffer.position();
+                    buffer.putLong(seqs[i]).put(record.type).putInt(record.payload.length).put(record.payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(buffer.array(), start, buffer.position() - start);
+                    buffer.putInt((int) crc.getValue());
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            for (PendingRecord record : batch) {
+                record.done.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).done.complete(seqs[i]);
+        }
+    }
+
+    /**
+     * Encodes a batch of registrations as a record payload.
+     *
+     * @param registrations The accepted registrations.
+     * @return The record payload.
+     */
+    public static byte[] registrationPayload(List<UserRegistration> registrations) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(registrations.size() * 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeRegistrations(out, registrations);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes the registrations of a registration record.
+     *
+     * @param payload The record payload.
+     * @return The registrations.
+     * @throws IOException If the payload is malformed.
+     */
+    public static List<UserRegistration> readRegistrations(byte[] payload) throws IOException {
+        return readRegistrations(new DataInputStream(new ByteArrayInputStream(payload)));
+    }
+
+    static void writeRegistrations(DataOutput out, Collection<UserRegistration> registrations) throws IOException {
+        out.writeInt(registrations.size());
+        for (UserRegistration registration : registrations) {
+            out.writeLong(registration.getRegDate().toEpochSecond(ZoneOffset.UTC));
+            out.writeUTF(registration.getUserEmail());
+            out.writeByte(registration.getRegNum());
+        }
+    }
+
+    static List<UserRegistration> readRegistrations(DataInput in) throws IOException {
+        int count = in.readInt();
+        List<UserRegistration> registrations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDateTime date = LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC);
+            registrations.add(new UserRegistration(in.readUTF(), date, in.readUnsignedByte()));
+        }
+        return registrations;
+    }
+
+    /**
+     * The outcome of a drawing, as recorded in the log.
+     *
+     * @param slot          The drawing slot.
+     * @param winningNumber The drawn number.
+     * @param prizeOre      The prize of every winner in ore.
+     * @param rolloverOre   The money rolled over to the next hour in ore.
+     */
+    public record DrawRecord(LocalDateTime slot, int winningNumber, long prizeOre, long rolloverOre) {
+        public byte[] toPayload() {
+            ByteBuffer buffer = ByteBuffer.allocate(28);
+            buffer.putLong(slot.toEpochSecond(ZoneOffset.UTC)).putInt(winningNumber)
+                    .putLong(prizeOre).putLong(rolloverOre);
+            return buffer.array();
+        }
+
+        public static DrawRecord fromPayload(byte[] payload) {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            return new DrawRecord(LocalDateTime.ofEpochSecond(buffer.getLong(), 0, ZoneOffset.UTC),
+                    buffer.getInt(), buffer.getLong(), buffer.getLong());
+        }
+    }
+
+    /**
+     * Money rolled over from a slot drawn on another cluster node. The origin
+     * slot identifies the transfer, so a resent transfer is only applied once.
+     *
+     * @param originHour The epoch hour of the drawn slot the money comes from.
+     * @param target     The slot the money is credited to.
+     * @param ore        The amount in ore.
+     */
+    public record RolloverRecord(int originHour, LocalDateTime target, long ore) {
+        public byte[] toPayload() {
+            return ByteBuffer.allocate(16).putInt(originHour).putInt(EpochHours.of(target)).putLong(ore).array();
+        }
+
+        public static RolloverRecord fromPayload(byte[] payload) {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            return new RolloverRecord(buffer.getInt(), EpochHours.toDateTime(buffer.getInt()), buffer.getLong());
+        }
+    }
+
+    private FileChannel openSegment(long firstSeq) throws IOException {
+        Path segment = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX));
+        return FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        // Zero padded names sort in sequence order.
+        segments.sort(null);
+        return segments;
+    }
+
+    private static long firstSeqOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private record ScanResult(long lastSeq, long validLength) {
+    }
+
+    private static ScanResult scan(Path segment, long afterSeq, RecordConsumer consumer) throws IOException {
+        long lastSeq = 0;
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 1 << 16))) {
+            while (true) {
+                long seq;
+                try {
+                    seq = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    byte type = in.readByte();
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_PAYLOAD) {
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    int storedCrc = in.readInt();
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putLong(seq).put(type).putInt(length);
+                    CRC32 crc = new CRC32();
+                    crc.update(header.array());
+                    crc.update(payload);
+                    if ((int) crc.getValue() != storedCrc) {
+                        break;
+                    }
+                    if (seq > afterSeq && consumer != null) {
+                        consumer.accept(new Entry(seq, type, payload));
+                    }
+                    lastSeq = seq;
+                    validLength += HEADER_SIZE + length + TRAILER_SIZE;
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+        return new ScanResult(lastSeq, validLength);
+    }
+}
@@ -0,0 +1,74 @@
+package lottery;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DrawRandomTest {
+    private static final int SLOTS = 1 << 20;
+
+    private final DrawRandom drawRandom = new DrawRandom(new byte[32]);
+
+    // The numbers, and pairs of numbers of neighbouring slots, must pass a chi-square test at the 0.1% level.
+    // The secret is fixed, so the test either always passes or always fails.
+    @Test
+    void numbersOfConsecutiveSlotsAreUniform() {
+        long[] counts = new long[256];
+        long[] pairCounts = new long[65_536];
+        int previous = -1;
+        for (int hour = 0; hour < SLOTS; hour++) {
+            int number = drawRandom.number(EpochHours.toDateTime(hour));
+            counts[number]++;
+            if (previous >= 0) {
+                pairCounts[previous << 8 | number]++;
+            }
+            previous = number;
+        }
+        double chiSquare = chiSquare(counts);
+        double pairChiSquare = chiSquare(pairCounts);
+        assertTrue(chiSquare < chiSquareCritical(255), "numbers: chi-square " + chiSquare);
+        assertTrue(pairChiSquare < chiSquareCritical(65_535), "pairs: chi-square " + pairChiSquare);
+    }
+
+    @Test
+    void verifyAcceptsTheRevealedSeed() {
+        LocalDateTime slot = EpochHours.toDateTime(SLOTS / 2);
+        byte[] seed = drawRandom.seed(slot);
+        assertTrue(DrawRandom.verify(seed, drawRandom.commitment(slot), drawRandom.number(slot)));
+    }
+
+    @Test
+    void verifyRejectsATamperedSeed() {
+        LocalDateTime slot = EpochHours.toDateTime(SLOTS / 2);
+        byte[] commitment = drawRandom.commitment(slot);
+        int number = drawRandom.number(slot);
+        byte[] tampered = drawRandom.seed(slot);
+        // Keeps the winning number, so only the commitment can catch it.
+        tampered[31] ^= 1;
+        assertFalse(DrawRandom.verify(tampered, commitment, number));
+        assertFalse(DrawRandom.verify(drawRandom.seed(slot.plusHours(1)), commitment, number));
+        assertFalse(DrawRandom.verify(drawRandom.seed(slot), commitment, (number + 1) % 256));
+    }
+
+    private static double chiSquare(long[] counts) {
+        double expected = 0;
+        for (long count : counts) {
+            expected += count;
+        }
+        expected /= counts.length;
+        double chiSquare = 0;
+        for (long count : counts) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        return chiSquare;
+    }
+
+    // The 99.9% quantile of the chi-square distribution, by the Wilson-Hilferty approximation.
+    private static double chiSquareCritical(int degrees) {
+        double variance = 2.0 / (9.0 * degrees);
+        return degrees * Math.pow(1 - variance + 3.090 * Math.sqrt(variance), 3);
+    }
+}
@@ -0,0 +1,84 @@
+package lottery;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LotteryServerTest {
+    private static final byte[] SECRET = new byte[32];
+    private static final int SLOTS = 48;
+    // Above the size from which the winners of a slot are materialized in parallel chunks.
+    private static final int LARGE_BUCKET = 20_000;
+
+    @TempDir
+    Path sequentialDir;
+
+    @TempDir
+    Path parallelDir;
+
+    @Test
+    void parallelCatchUpRecordsTheSameDrawsAsSequential() throws Exception {
+        LocalDateTime last = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(1);
+        List<UserRegistration> registrations = seededRegistrations(last);
+
+        List<String> sequential = catchUp(sequentialDir, registrations, last, false);
+        List<String> parallel = catchUp(parallelDir, registrations, last, true);
+
+        assertEquals(sequential, parallel);
+    }
+
+    // Slots of different sizes, some too small to be won so their pots roll over,
+    // and one slot where the winning number has a large bucket.
+    private static List<UserRegistration> seededRegistrations(LocalDateTime last) {
+        Random random = new Random(42);
+        DrawRandom drawRandom = new DrawRandom(SECRET);
+        List<UserRegistration> registrations = new ArrayList<>();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            LocalDateTime time = last.minusHours(slot);
+            int tickets = slot % 4 == 0 ? 3 : 500 + random.nextInt(5_000);
+            for (int i = 0; i < tickets; i++) {
+                registrations.add(new UserRegistration("user" + random.nextInt(2_000) + "@example.com", time,
+                        random.nextInt(256)));
+            }
+        }
+        LocalDateTime largeSlot = last.minusHours(SLOTS / 2 + 1);
+        int winningNumber = drawRandom.number(largeSlot);
+        for (int i = 0; i < LARGE_BUCKET; i++) {
+            registrations.add(new UserRegistration("winner" + i + "@example.com", largeSlot, winningNumber));
+        }
+        return registrations;
+    }
+
+    // Every recorded summary followed by all its winners, in drawing order.
+    private static List<String> catchUp(Path dataDir, List<UserRegistration> registrations, LocalDateTime last,
+                                        boolean parallel) throws Exception {
+        List<String> recorded = new ArrayList<>();
+        try (LotteryServer server = new LotteryServer(dataDir, new DrawRandom(SECRET))) {
+            for (int from = 0; from < registrations.size(); from += 65_536) {
+                server.applyReg(registrations.subList(from, Math.min(from + 65_536, registrations.size())));
+            }
+            server.makeDraw(parallel);
+
+            List<LotteryResult> results = server.getHisRec(last.minusHours(SLOTS), last.plusHours(1));
+            assertTrue(results.size() >= SLOTS, "every slot is drawn");
+            assertTrue(results.stream().anyMatch(result -> result.getRolloverOutOre() > 0), "some pots roll over");
+            assertTrue(results.stream().anyMatch(result -> result.getWinnerCount() >= LARGE_BUCKET), "one slot has a large bucket");
+            for (LotteryResult result : results) {
+                recorded.add(result.toString());
+                for (int offset = 0; offset < result.getWinnerCount(); offset += LotteryServer.MAX_WINNER_PAGE) {
+                    recorded.add(server.winners(result.getResultDate(), offset, LotteryServer.MAX_WINNER_PAGE).emails().toString());
+                }
+            }
+        }
+        return recorded;
+    }
+}